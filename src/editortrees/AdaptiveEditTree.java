@@ -0,0 +1,180 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * text that is kept in a flat array while it is small and in an EditTree once
+ * it grows, with the add, delete and get methods of EditTree
+ * 
+ * an array edit moves every character behind it, which for a few hundred
+ * characters is cheaper than walking down a tree and costs far less memory than
+ * a node per character. the text moves to a tree when it grows past the
+ * threshold and back to an array when it shrinks below half of it, so moving
+ * back and forth costs O(1) amortized time per edit.
+ */
+public class AdaptiveEditTree implements TextBuffer {
+
+	public static final int DEFAULT_THRESHOLD = 512;
+
+	private final int threshold;
+	private char[] chars; // the text while it is small, null while in the tree
+	private int size;
+	private EditTree tree; // the text while it is large, null while in the array
+
+	/**
+	 * constructs empty text in O(1) time
+	 */
+	public AdaptiveEditTree() {
+
+		this("", DEFAULT_THRESHOLD);
+
+	} // AdaptiveEditTree
+
+	/**
+	 * constructs text that holds s in O(N) time
+	 */
+	public AdaptiveEditTree(String s) {
+
+		this(s, DEFAULT_THRESHOLD);
+
+	} // AdaptiveEditTree
+
+	/**
+	 * constructs text that holds s and moves to a tree when it grows past
+	 * threshold characters, in O(N) time
+	 * 
+	 * @throws IllegalArgumentException if threshold is less than 1
+	 */
+	public AdaptiveEditTree(String s, int threshold) throws IllegalArgumentException {
+
+		if (threshold < 1)
+			throw new IllegalArgumentException("threshold must be positive: " + threshold);
+		this.threshold = threshold;
+		this.size = s.length();
+		if (this.size > threshold) {
+			this.tree = new EditTree(s);
+		} else {
+			this.chars = Arrays.copyOf(s.toCharArray(), Math.max(this.size, 16));
+		}
+
+	} // AdaptiveEditTree
+
+	/**
+	 * @return true iff the text is kept in a tree at the moment
+	 */
+	public boolean isTree() {
+
+		return this.tree != null;
+
+	} // isTree
+
+	/**
+	 * @return the number of characters in O(1) time
+	 */
+	public int size() {
+
+		return this.size;
+
+	} // size
+
+	public void add(char ch) {
+
+		this.add(ch, this.size);
+
+	} // add
+
+	/**
+	 * adds ch at pos, in O(N) time while the text is small and O(log(N)) time once
+	 * it is large
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size)
+			throw new IndexOutOfBoundsException();
+
+		if (this.tree != null) {
+			this.tree.add(ch, pos);
+		} else if (this.size == this.threshold) { // moving to a tree
+			this.tree = new EditTree(new String(this.chars, 0, this.size));
+			this.chars = null;
+			this.tree.add(ch, pos);
+		} else {
+			if (this.size == this.chars.length)
+				this.chars = Arrays.copyOf(this.chars, Math.min(2 * this.size, this.threshold));
+			System.arraycopy(this.chars, pos, this.chars, pos + 1, this.size - pos);
+			this.chars[pos] = ch;
+		}
+		this.size++;
+
+	} // add
+
+	/**
+	 * deletes the character at pos, in O(N) time while the text is small and
+	 * O(log(N)) time once it is large
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size)
+			throw new IndexOutOfBoundsException();
+
+		char ch;
+		if (this.tree != null) {
+			ch = this.tree.delete(pos);
+			if (this.size - 1 < this.threshold / 2) { // moving back to an array
+				this.chars = Arrays.copyOf(this.tree.toString().toCharArray(), this.threshold);
+				this.tree = null;
+			}
+		} else {
+			ch = this.chars[pos];
+			System.arraycopy(this.chars, pos + 1, this.chars, pos, this.size - pos - 1);
+		}
+		this.size--;
+		return ch;
+
+	} // delete
+
+	/**
+	 * @return the character at pos, in O(1) time while the text is small and
+	 *         O(log(N)) time once it is large
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size)
+			throw new IndexOutOfBoundsException();
+		return this.tree != null ? this.tree.get(pos) : this.chars[pos];
+
+	} // get
+
+	/**
+	 * @return the length characters from pos in O(length) time while the text is
+	 *         small and O(length + log(N)) time once it is large
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+		return this.tree != null ? this.tree.get(pos, length) : new String(this.chars, pos, length);
+
+	} // get
+
+	/**
+	 * @return all the characters in O(N) time
+	 */
+	@Override
+	public String toString() {
+
+		return this.get(0, this.size);
+
+	} // toString
+
+} // end AdaptiveEditTree
@@ -0,0 +1,67 @@
+package editortrees;
+
+/**
+ * a summary of a run of characters that an EditTree can keep for every one of
+ * its subtrees, such as a count or a hash
+ * 
+ * combine must be associative and identity must be its identity, so that a
+ * subtree's summary is the same no matter how the tree is shaped. that lets the
+ * tree recompute summaries in O(1) per node during rotations.
+ * 
+ * @param <T> the type of the summary
+ */
+public interface Aggregate<T> {
+
+	/**
+	 * @return the summary of an empty run of characters
+	 */
+	T identity();
+
+	/**
+	 * @param ch a single character
+	 * @return the summary of a run holding only ch
+	 */
+	T of(char ch);
+
+	/**
+	 * @param left  the summary of a run of characters
+	 * @param right the summary of the run that directly follows it
+	 * @return the summary of both runs put together
+	 */
+	T combine(T left, T right);
+
+	/**
+	 * an aggregate that ignores order gives the same summary for a run and for
+	 * the run reversed, so a tree can reverse a range without recomputing it
+	 * 
+	 * @return true iff combine(a, b) always equals combine(b, a)
+	 */
+	default boolean ignoresOrder() {
+
+		return false;
+
+	} // ignoresOrder
+
+	/**
+	 * a reversible aggregate can tell the summary of a run reversed from the
+	 * summary of the run alone, so a tree can reverse a range lazily
+	 * 
+	 * @return true iff reversed may be called
+	 */
+	default boolean reversible() {
+
+		return this.ignoresOrder();
+
+	} // reversible
+
+	/**
+	 * @param summary the summary of a run of characters
+	 * @return the summary of the same run reversed, in O(1) time
+	 */
+	default T reversed(T summary) {
+
+		return summary;
+
+	} // reversed
+
+} // end Aggregate
@@ -0,0 +1,168 @@
+package editortrees;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * the aggregates kept by the nodes of a tree
+ * never changes once built, so any number of nodes and trees can share it
+ */
+class Aggregates {
+
+	private final Aggregate<?>[] list;
+	private final Map<LazyTransform, Boolean> kept = new WeakHashMap<>(); // answers of keeps
+
+	Aggregates(Aggregate<?>... list) {
+
+		this.list = list;
+
+	} // Aggregates
+
+	/**
+	 * @param aggregates the registry to extend, may be null
+	 * @param aggregate  the aggregate to add
+	 * @return a registry with all of the given aggregates in O(number of aggregates) time
+	 */
+	static Aggregates with(Aggregates aggregates, Aggregate<?> aggregate) {
+
+		if (aggregates == null)
+			return new Aggregates(aggregate);
+
+		Aggregate<?>[] list = Arrays.copyOf(aggregates.list, aggregates.list.length + 1);
+		list[list.length - 1] = aggregate;
+		return new Aggregates(list);
+
+	} // with
+
+	/**
+	 * @param aggregate the aggregate to leave out
+	 * @return a registry without the aggregate, or null if none would be left
+	 */
+	Aggregates without(Aggregate<?> aggregate) {
+
+		int index = this.indexOf(aggregate);
+		if (index < 0)
+			return this;
+		if (this.list.length == 1)
+			return null;
+
+		Aggregate<?>[] list = new Aggregate<?>[this.list.length - 1];
+		System.arraycopy(this.list, 0, list, 0, index);
+		System.arraycopy(this.list, index + 1, list, index, list.length - index);
+		return new Aggregates(list);
+
+	} // without
+
+	/**
+	 * @return true iff every aggregate can reverse a summary
+	 */
+	boolean reversible() {
+
+		for (Aggregate<?> aggregate : this.list)
+			if (!aggregate.reversible())
+				return false;
+		return true;
+
+	} // reversible
+
+	/**
+	 * turns every summary of the node into the summary of its subtree reversed
+	 * works in O(number of aggregates) time
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void reverse(Node node) {
+
+		for (int i = 0; i < this.list.length; i++) {
+			Aggregate aggregate = this.list[i];
+			node.summaries[i] = aggregate.reversed(node.summaries[i]);
+		}
+
+	} // reverse
+
+	/**
+	 * a transform keeps the summaries if every character it changes has the same
+	 * summary as what it becomes, so every run keeps its summary too. the answer
+	 * takes one call of each aggregate per char value, and is then remembered.
+	 * 
+	 * @return true iff transform leaves every summary as it is
+	 */
+	boolean keeps(LazyTransform transform) {
+
+		synchronized (this.kept) {
+			Boolean keeps = this.kept.get(transform);
+			if (keeps == null) {
+				keeps = true;
+				for (int ch = Character.MIN_VALUE; keeps && ch <= Character.MAX_VALUE; ch++) {
+					char result = transform.apply((char) ch);
+					if (result == ch)
+						continue;
+					for (Aggregate<?> aggregate : this.list)
+						if (!Objects.equals(aggregate.of((char) ch), aggregate.of(result)))
+							keeps = false;
+				}
+				this.kept.put(transform, keeps);
+			}
+			return keeps;
+		}
+
+	} // keeps
+
+	/**
+	 * @return true iff both registries, either of which may be null, keep equal
+	 *         aggregates in the same slots, so their summaries can be mixed
+	 */
+	static boolean same(Aggregates first, Aggregates second) {
+
+		if (first == second)
+			return true;
+		if (first == null || second == null)
+			return false;
+		return Arrays.equals(first.list, second.list);
+
+	} // same
+
+	/**
+	 * @return the slot of the aggregate in each node's summaries, or -1
+	 */
+	int indexOf(Aggregate<?> aggregate) {
+
+		for (int i = 0; i < this.list.length; i++)
+			if (this.list[i] == aggregate)
+				return i;
+		return -1;
+
+	} // indexOf
+
+	/**
+	 * @return the summary of the node's subtree for the aggregate in the given slot
+	 */
+	Object summary(Node node, int index) {
+
+		if (node == Node.NULL_NODE)
+			return this.list[index].identity();
+		return node.summaries[index];
+
+	} // summary
+
+	/**
+	 * recomputes every summary of the node from the summaries of its children
+	 * works in O(number of aggregates) time
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void summarize(Node node) {
+
+		if (node.summaries == null || node.summaries.length != this.list.length)
+			node.summaries = new Object[this.list.length];
+
+		for (int i = 0; i < this.list.length; i++) {
+			Aggregate aggregate = this.list[i];
+			Object left = this.summary(node.left, i);
+			Object right = this.summary(node.right, i);
+			node.summaries[i] = aggregate.combine(aggregate.combine(left, aggregate.of(node.data)), right);
+		}
+
+	} // summarize
+
+} // end Aggregates
@@ -0,0 +1,64 @@
+package editortrees;
+
+/**
+ * a position in an EditTree that moves with the text around it as characters
+ * are added and deleted
+ * 
+ * anchors are kept by the tree in a MarkerTree, so finding the current
+ * position of one works in O(log(M)) expected time for M anchors, and an edit
+ * moves all of them at once
+ */
+public class Anchor extends Marker {
+
+	/**
+	 * which side an anchor sticks to when text is added right at its position
+	 */
+	public enum Gravity {
+
+		LEFT, // stays in front of the added text
+		RIGHT; // moves behind the added text
+
+	} // Gravity
+
+	Anchor(int pos, Gravity gravity, int priority) {
+
+		super(pos, gravity, priority);
+
+	} // Anchor
+
+	/**
+	 * @return the current position of this anchor in O(log(M)) expected time
+	 * @throws IllegalStateException if the anchor was removed from its tree
+	 */
+	public int position() {
+
+		return this.start + this.pendingShift();
+
+	} // position
+
+	/**
+	 * @return the side this anchor sticks to
+	 */
+	public Gravity gravity() {
+
+		return this.gravity;
+
+	} // gravity
+
+	/**
+	 * @return true iff the anchor still follows the text of its tree
+	 */
+	public boolean isAttached() {
+
+		return this.tree != null;
+
+	} // isAttached
+
+	@Override
+	public String toString() {
+
+		return this.tree == null ? "removed" : this.position() + (this.gravity == Gravity.LEFT ? "<" : ">");
+
+	} // toString
+
+} // end Anchor
@@ -0,0 +1,213 @@
+package editortrees;
+
+/**
+ * an EditTree with a gap buffer in front of it for bursts of typing
+ * 
+ * edits that touch the text being buffered change only the buffer. the buffer
+ * stands for replacing removed characters of the tree from start on, and is
+ * spliced into the tree with one bulk delete and one bulk add when an edit
+ * lands somewhere else, when it fills up or replaces as many characters as it
+ * could hold, or when the tree is asked for. reads see the buffered edits all
+ * along.
+ */
+public class BufferedEditTree implements TextBuffer {
+
+	private final EditTree tree;
+	private final int capacity;
+	private final GapBuffer buffer;
+	private int start; // where the buffered text goes in the tree
+	private int removed; // characters of the tree from start that it replaces
+
+	/**
+	 * buffers edits to tree, flushing once capacity characters are buffered or
+	 * removed from the tree
+	 * 
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public BufferedEditTree(EditTree tree, int capacity) throws IllegalArgumentException {
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.tree = tree;
+		this.capacity = capacity;
+		this.buffer = new GapBuffer(Math.min(capacity, 64));
+		this.start = 0;
+		this.removed = 0;
+
+	} // BufferedEditTree
+
+	/**
+	 * buffers edits to an empty tree
+	 */
+	public BufferedEditTree() {
+
+		this(new EditTree(), 256);
+
+	} // BufferedEditTree
+
+	private boolean isBuffering() {
+
+		return this.removed > 0 || this.buffer.length() > 0;
+
+	} // isBuffering
+
+	/**
+	 * splices the buffered edits into the tree and hands the tree over, so the
+	 * rest of its methods can be used
+	 * works in O(B + log(N)) time for B buffered characters
+	 */
+	public EditTree tree() {
+
+		this.flush();
+		return this.tree;
+
+	} // tree
+
+	/**
+	 * splices the buffered edits into the tree
+	 * works in O(B + log(N)) time for B buffered characters
+	 */
+	public void flush() {
+
+		if (!this.isBuffering()) return;
+		this.tree.delete(this.start, this.removed);
+		this.tree.add(this.buffer.toString(), this.start);
+		this.buffer.clear();
+		this.removed = 0;
+
+	} // flush
+
+	/**
+	 * @return the number of characters, with the buffered edits, in O(1) time
+	 */
+	public int size() {
+
+		return this.tree.size() - this.removed + this.buffer.length();
+
+	} // size
+
+	public void add(char ch) {
+
+		this.add(ch, this.size());
+
+	} // add
+
+	/**
+	 * adds ch at pos in O(1) amortized time next to the buffered text, or after a
+	 * flush anywhere else
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size())
+			throw new IndexOutOfBoundsException();
+
+		if (!this.touches(pos, 0))
+			this.restart(pos);
+		this.buffer.insert(pos - this.start, ch);
+		if (this.buffer.length() >= this.capacity)
+			this.flush();
+
+	} // add
+
+	/**
+	 * deletes the character at pos in O(1) amortized time next to the buffered
+	 * text, or after a flush anywhere else
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		char ch = this.get(pos);
+		if (!this.touches(pos, 1))
+			this.restart(pos);
+
+		if (pos < this.start) { // the character in front of the buffered text
+			this.start--;
+			this.removed++;
+		} else if (pos < this.start + this.buffer.length())
+			this.buffer.delete(pos - this.start);
+		else // the character behind it
+			this.removed++;
+		if (this.removed >= this.capacity)
+			this.flush();
+		return ch;
+
+	} // delete
+
+	/**
+	 * @return true iff an edit of length characters at pos overlaps or touches
+	 *         the buffered text
+	 */
+	private boolean touches(int pos, int length) {
+
+		return this.isBuffering() && pos <= this.start + this.buffer.length() && pos + length >= this.start;
+
+	} // touches
+
+	/**
+	 * flushes and starts buffering at pos
+	 */
+	private void restart(int pos) {
+
+		this.flush();
+		this.start = pos;
+
+	} // restart
+
+	/**
+	 * @return the character at pos in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+		if (pos < this.start)
+			return this.tree.get(pos);
+		if (pos < this.start + this.buffer.length())
+			return this.buffer.charAt(pos - this.start);
+		return this.tree.get(pos - this.buffer.length() + this.removed);
+
+	} // get
+
+	/**
+	 * @return the length characters from pos in O(length + log(N)) time
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size())
+			throw new IndexOutOfBoundsException();
+
+		int end = pos + length;
+		int bufferEnd = this.start + this.buffer.length();
+		StringBuilder builder = new StringBuilder(length);
+		if (pos < this.start)
+			builder.append(this.tree.get(pos, Math.min(end, this.start) - pos));
+		if (pos < bufferEnd && end > this.start)
+			this.buffer.appendTo(builder, Math.max(pos, this.start) - this.start, Math.min(end, bufferEnd) - this.start);
+		if (end > bufferEnd) {
+			int from = Math.max(pos, bufferEnd);
+			builder.append(this.tree.get(from - this.buffer.length() + this.removed, end - from));
+		}
+		return builder.toString();
+
+	} // get
+
+	/**
+	 * @return all the characters in O(N) time
+	 */
+	@Override
+	public String toString() {
+
+		return this.get(0, this.size());
+
+	} // toString
+
+} // end BufferedEditTree
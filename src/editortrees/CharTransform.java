@@ -0,0 +1,34 @@
+package editortrees;
+
+/**
+ * a change applied to each character of a range on its own, like a change of
+ * case
+ */
+@FunctionalInterface
+public interface CharTransform {
+
+	CharTransform UPPER_CASE = Character::toUpperCase;
+	CharTransform LOWER_CASE = Character::toLowerCase;
+
+	/**
+	 * @return what ch becomes
+	 */
+	char apply(char ch);
+
+	/**
+	 * @return the transform that replaces each character of from with the
+	 *         character of to at the same index, and keeps every other character
+	 * @throws IllegalArgumentException if the two differ in length
+	 */
+	static CharTransform remap(String from, String to) throws IllegalArgumentException {
+
+		if (from.length() != to.length())
+			throw new IllegalArgumentException("remap needs strings of equal length");
+		return ch -> {
+			int index = from.indexOf(ch);
+			return index < 0 ? ch : to.charAt(index);
+		};
+
+	} // remap
+
+} // end CharTransform
@@ -0,0 +1,103 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * counts how often each character of a fixed alphabet occurs in a run of
+ * characters, one slot per alphabet character
+ * summaries are shared between nodes and must not be changed
+ */
+public class CharacterCounts implements Aggregate<int[]> {
+
+	private final char[] alphabet; // sorted, without repeats
+	private final int[] none;
+	private final int[][] single; // single[i] counts one of alphabet[i]
+
+	/**
+	 * @param alphabet the characters to count, others are ignored
+	 */
+	public CharacterCounts(CharSequence alphabet) {
+
+		// sort the alphabet and drop repeats so slots can be found by binary search
+		char[] chars = alphabet.toString().toCharArray();
+		Arrays.sort(chars);
+		int distinct = 0;
+		for (int i = 0; i < chars.length; i++)
+			if (i == 0 || chars[i] != chars[i - 1])
+				chars[distinct++] = chars[i];
+		this.alphabet = Arrays.copyOf(chars, distinct);
+
+		this.none = new int[this.alphabet.length];
+		this.single = new int[this.alphabet.length][];
+		for (int i = 0; i < this.alphabet.length; i++) {
+			this.single[i] = new int[this.alphabet.length];
+			this.single[i][i] = 1;
+		}
+
+	} // CharacterCounts
+
+	/**
+	 * @return the slot of ch in each summary, or -1 if ch is not counted
+	 */
+	public int slotOf(char ch) {
+
+		int slot = Arrays.binarySearch(this.alphabet, ch);
+		return slot < 0 ? -1 : slot;
+
+	} // slotOf
+
+	@Override
+	public boolean ignoresOrder() {
+
+		return true;
+
+	} // ignoresOrder
+
+	@Override
+	public int[] identity() {
+
+		return this.none;
+
+	} // identity
+
+	@Override
+	public int[] of(char ch) {
+
+		int slot = this.slotOf(ch);
+		return slot < 0 ? this.none : this.single[slot];
+
+	} // of
+
+	@Override
+	public int[] combine(int[] left, int[] right) {
+
+		if (left == this.none) return right;
+		if (right == this.none) return left;
+
+		int[] sum = new int[this.alphabet.length];
+		for (int i = 0; i < sum.length; i++)
+			sum[i] = left[i] + right[i];
+		return sum;
+
+	} // combine
+
+	/**
+	 * counts of the same alphabet have the same slots, so their summaries mix
+	 */
+	@Override
+	public boolean equals(Object other) {
+
+		if (!(other instanceof CharacterCounts))
+			return false;
+		return Arrays.equals(this.alphabet, ((CharacterCounts) other).alphabet);
+
+	} // equals
+
+	@Override
+	public int hashCode() {
+
+		return Arrays.hashCode(this.alphabet);
+
+	} // hashCode
+
+} // end CharacterCounts
@@ -0,0 +1,92 @@
+package editortrees;
+
+/**
+ * counts the Unicode code points in a run of characters, where a high surrogate
+ * directly followed by a low surrogate is one code point and every other
+ * character, including an unpaired surrogate, is one code point on its own
+ * 
+ * a pair can be split between two runs, so each summary also remembers which
+ * surrogates the run starts and ends with. it counts the run reversed as well,
+ * where the pairs it had are split and the low-high pairs become pairs, so a
+ * tree can reverse a range lazily
+ */
+class CodePoints implements Aggregate<CodePoints.Value> {
+
+	static final CodePoints INSTANCE = new CodePoints();
+
+	private static final Value EMPTY = new Value(0, 0, false, false, false, false);
+	private static final Value PLAIN = new Value(1, 1, false, false, false, false);
+	private static final Value HIGH = new Value(1, 1, false, true, false, true);
+	private static final Value LOW = new Value(1, 1, true, false, true, false);
+
+	private CodePoints() {
+
+	} // CodePoints
+
+	static final class Value {
+
+		final int count;
+		final int reversedCount; // the count of the run reversed
+		final boolean startsLow; // the first character is a low surrogate
+		final boolean startsHigh; // the first character is a high surrogate
+		final boolean endsLow; // the last character is a low surrogate
+		final boolean endsHigh; // the last character is a high surrogate
+
+		Value(int count, int reversedCount, boolean startsLow, boolean startsHigh, boolean endsLow, boolean endsHigh) {
+
+			this.count = count;
+			this.reversedCount = reversedCount;
+			this.startsLow = startsLow;
+			this.startsHigh = startsHigh;
+			this.endsLow = endsLow;
+			this.endsHigh = endsHigh;
+
+		} // Value
+
+	} // end Value
+
+	@Override
+	public Value identity() {
+
+		return EMPTY;
+
+	} // identity
+
+	@Override
+	public Value of(char ch) {
+
+		if (Character.isHighSurrogate(ch)) return HIGH;
+		if (Character.isLowSurrogate(ch)) return LOW;
+		return PLAIN;
+
+	} // of
+
+	@Override
+	public Value combine(Value left, Value right) {
+
+		if (left.count == 0) return right;
+		if (right.count == 0) return left;
+
+		// a pair split across the two runs was counted once on each side
+		int count = left.count + right.count - (left.endsHigh && right.startsLow ? 1 : 0);
+		int reversedCount = left.reversedCount + right.reversedCount - (right.startsHigh && left.endsLow ? 1 : 0);
+		return new Value(count, reversedCount, left.startsLow, left.startsHigh, right.endsLow, right.endsHigh);
+
+	} // combine
+
+	@Override
+	public boolean reversible() {
+
+		return true;
+
+	} // reversible
+
+	@Override
+	public Value reversed(Value summary) {
+
+		return new Value(summary.reversedCount, summary.count, summary.endsLow, summary.endsHigh, summary.startsLow,
+				summary.startsHigh);
+
+	} // reversed
+
+} // end CodePoints
@@ -0,0 +1,116 @@
+package editortrees;
+
+import editortrees.Anchor.Gravity;
+
+/**
+ * a span of text in an EditTree, from start up to but not including end,
+ * carrying a value such as a highlight style or an annotation
+ * the span moves and stretches with the text around it as characters are added
+ * and deleted, and its end never moves in front of its start
+ * 
+ * @param <T> the type of the value
+ */
+public class Decoration<T> extends Marker {
+
+	final Gravity endGravity; // which way the end moves for text added at it
+	int end; // like start, not counting the shifts still pending in ancestors
+	int maxEnd; // the greatest end within this decoration's subtree
+	private final T value;
+
+	Decoration(int start, int end, T value, Gravity startGravity, Gravity endGravity, int priority) {
+
+		super(start, startGravity, priority);
+		this.end = end;
+		this.maxEnd = end;
+		this.endGravity = endGravity;
+		this.value = value;
+
+	} // Decoration
+
+	/**
+	 * @return the current start of the span in O(log(M)) expected time
+	 * @throws IllegalStateException if the decoration was removed from its tree
+	 */
+	public int start() {
+
+		return this.start + this.pendingShift();
+
+	} // start
+
+	/**
+	 * @return the current end of the span in O(log(M)) expected time
+	 * @throws IllegalStateException if the decoration was removed from its tree
+	 */
+	public int end() {
+
+		return this.end + this.pendingShift();
+
+	} // end
+
+	/**
+	 * @return the value given when the span was created
+	 */
+	public T value() {
+
+		return this.value;
+
+	} // value
+
+	/**
+	 * @return true iff the span still follows the text of its tree
+	 */
+	public boolean isAttached() {
+
+		return this.tree != null;
+
+	} // isAttached
+
+	@Override
+	void shiftBy(int length) {
+
+		super.shiftBy(length);
+		this.end += length;
+		this.maxEnd += length;
+
+	} // shiftBy
+
+	@Override
+	void collapse(int pos, int length) {
+
+		super.collapse(pos, length);
+		this.end = this.movedEnd(pos, length, 0);
+
+	} // collapse
+
+	/**
+	 * @return where the end goes for an edit at pos
+	 */
+	int movedEnd(int pos, int removed, int inserted) {
+
+		if (this.end < pos || (this.end == pos && (removed > 0 || this.endGravity == Gravity.LEFT)))
+			return this.end; // in front of the edit
+		if (removed > 0 && this.end <= pos + removed)
+			return pos; // inside the deleted range
+		return this.end - removed + inserted;
+
+	} // movedEnd
+
+	@Override
+	void update() {
+
+		this.maxEnd = this.end;
+		if (this.left != null)
+			this.maxEnd = Math.max(this.maxEnd, ((Decoration<?>) this.left).maxEnd);
+		if (this.right != null)
+			this.maxEnd = Math.max(this.maxEnd, ((Decoration<?>) this.right).maxEnd);
+
+	} // update
+
+	@Override
+	public String toString() {
+
+		return this.tree == null ? "removed" : "[" + this.start() + ", " + this.end() + ") " + this.value;
+
+	} // toString
+
+} // end Decoration
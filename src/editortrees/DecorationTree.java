@@ -0,0 +1,50 @@
+package editortrees;
+
+import java.util.List;
+
+/**
+ * the decorations of one EditTree, in a MarkerTree ordered by start whose nodes
+ * also keep the greatest end in their subtree. that lets a search for the spans
+ * overlapping a range skip every subtree that ends in front of it, so it works
+ * in O((k + 1) * log(M)) expected time for k spans found among M.
+ */
+class DecorationTree extends MarkerTree {
+
+	@Override
+	void moveEnds(Marker front, int pos, int removed, int inserted) {
+
+		if (front == null) return;
+
+		Decoration<?> decoration = (Decoration<?>) front;
+		if (decoration.maxEnd < pos) return; // every span here ends in front of pos
+
+		push(decoration);
+		this.moveEnds(decoration.left, pos, removed, inserted);
+		this.moveEnds(decoration.right, pos, removed, inserted);
+		decoration.end = decoration.movedEnd(pos, removed, inserted);
+		decoration.update();
+
+	} // moveEnds
+
+	/**
+	 * adds the spans that share a character with the range from up to to, in
+	 * order of their starts
+	 */
+	void overlapping(Marker marker, int from, int to, List<Decoration<?>> list) {
+
+		if (marker == null) return;
+
+		Decoration<?> decoration = (Decoration<?>) marker;
+		if (decoration.maxEnd <= from) return; // every span here ends in front of from
+
+		push(decoration);
+		this.overlapping(decoration.left, from, to, list);
+		if (decoration.start < to) {
+			if (decoration.end > from)
+				list.add(decoration);
+			this.overlapping(decoration.right, from, to, list);
+		}
+
+	} // overlapping
+
+} // end DecorationTree
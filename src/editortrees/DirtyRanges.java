@@ -0,0 +1,73 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the parts of an EditTree changed since they were last drained, kept as
+ * disjoint spans in a DecorationTree so they follow later edits like any other
+ * decoration
+ * 
+ * an edit marks the text it added, or the point where it deleted text, and
+ * merges that with every span it touches. so the spans stay few and far apart,
+ * and an edit works in O((k + 1) * log(M)) expected time for k spans merged.
+ */
+class DirtyRanges {
+
+	private DecorationTree spans;
+
+	DirtyRanges() {
+
+		this.spans = new DecorationTree();
+
+	} // DirtyRanges
+
+	/**
+	 * moves the spans for an edit, then marks the edit
+	 */
+	void edited(int pos, int removed, int inserted) {
+
+		if (removed > 0)
+			this.spans.deleted(pos, removed);
+		if (inserted > 0)
+			this.spans.inserted(pos, inserted);
+
+		// merge with the spans that overlap or touch the edit
+		int start = pos;
+		int end = pos + inserted;
+		List<Decoration<?>> touching = new ArrayList<Decoration<?>>();
+		this.spans.overlapping(this.spans.root, start - 1, end + 1, touching);
+		for (Decoration<?> span : touching) {
+			start = Math.min(start, span.start());
+			end = Math.max(end, span.end());
+			this.spans.remove(span);
+		}
+
+		this.mark(start, end);
+
+	} // edited
+
+	/**
+	 * marks a range as changed, without merging it
+	 */
+	void mark(int start, int end) {
+
+		this.spans.add(new Decoration<Void>(start, end, null, Anchor.Gravity.RIGHT, Anchor.Gravity.LEFT,
+				this.spans.nextPriority()));
+
+	} // mark
+
+	/**
+	 * @return the changed ranges in order, forgetting them, in O(k) time
+	 */
+	List<Range> drain() {
+
+		List<Range> ranges = new ArrayList<Range>();
+		for (Marker span : this.spans.all())
+			ranges.add(new Range(span.start, ((Decoration<?>) span).end));
+		this.spans = new DecorationTree();
+		return ranges;
+
+	} // drain
+
+} // end DirtyRanges
@@ -0,0 +1,304 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import editortrees.TextBuffers.Engine;
+
+/**
+ * Tests for the engines that keep text like an EditTree does, each checked
+ * against a StringBuilder on random editing traces
+ */
+public class EditEnginesTest {
+
+	/**
+	 * edits t like a user would, mostly in runs at one cursor, checking it
+	 * against a StringBuilder along the way
+	 */
+	private static void checkTrace(TextBuffer t, Random random, int steps) {
+		StringBuilder model = new StringBuilder(t.toString());
+		int cursor = random.nextInt(model.length() + 1);
+		for (int i = 0; i < steps; i++) {
+			if (random.nextInt(20) == 0)
+				cursor = random.nextInt(model.length() + 1);
+			if (model.length() > 0 && random.nextInt(3) == 0) {
+				if (cursor > 0 && random.nextBoolean())
+					cursor--; // backspace
+				int pos = Math.min(cursor, model.length() - 1);
+				assertEquals(model.charAt(pos), t.delete(pos));
+				model.deleteCharAt(pos);
+			} else {
+				char ch = (char) ('a' + random.nextInt(26));
+				if (cursor == model.length() && random.nextBoolean())
+					t.add(ch);
+				else
+					t.add(ch, cursor);
+				model.insert(cursor++, ch);
+			}
+			cursor = Math.min(cursor, model.length());
+			assertEquals(model.length(), t.size());
+			if (model.length() > 0) {
+				int pos = random.nextInt(model.length());
+				assertEquals(model.charAt(pos), t.get(pos));
+				int length = random.nextInt(Math.min(50, model.length() - pos) + 1);
+				assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+			}
+		}
+		assertEquals(model.toString(), t.toString());
+	}
+
+	@Test
+	public void testEveryEngine() {
+		Random random = new Random(45);
+		for (Engine engine : Engine.values())
+			for (int size : new int[] { 0, 10, 2000 }) {
+				StringBuilder text = new StringBuilder();
+				for (int i = 0; i < size; i++)
+					text.append((char) ('A' + random.nextInt(26)));
+				TextBuffer t = engine.create(text.toString());
+				assertEquals(text.toString(), t.toString());
+				checkTrace(t, random, 3000);
+			}
+	}
+
+	@Test
+	public void testChooseEngine() {
+		assertEquals(Engine.ADAPTIVE, TextBuffers.choose(80, 0.9, 1));
+		assertEquals(Engine.PIECE_TABLE, TextBuffers.choose(1 << 20, 0.1, 100));
+		assertEquals(Engine.BUFFERED, TextBuffers.choose(1 << 20, 0.9, 2));
+		assertEquals(Engine.TREE, TextBuffers.choose(1 << 20, 0.1, 2));
+		SwitchableTextBuffer t = TextBuffers.create("hello", 5, 0.9, 1);
+		assertEquals(Engine.ADAPTIVE, t.engine());
+		assertEquals("hello", t.toString());
+	}
+
+	@Test
+	public void testSwitchEngines() {
+		Random random = new Random(450);
+		SwitchableTextBuffer t = new SwitchableTextBuffer("start", Engine.TREE);
+		for (int i = 0; i < 20; i++) {
+			Engine engine = Engine.values()[random.nextInt(Engine.values().length)];
+			String before = t.toString();
+			t.switchTo(engine);
+			assertEquals(engine, t.engine());
+			assertEquals(before, t.toString());
+			checkTrace(t, random, 500);
+		}
+	}
+
+	@Test
+	public void testPieceTable() {
+		for (long seed = 0; seed < 5; seed++) {
+			PieceTable t = new PieceTable("the original text of the table\n");
+			StringBuilder model = new StringBuilder(t.toString());
+			Random random = new Random(seed);
+			int cursor = 0;
+			for (int i = 0; i < 5000; i++) {
+				if (random.nextInt(10) == 0)
+					cursor = random.nextInt(model.length() + 1);
+				if (model.length() > 0 && random.nextInt(3) == 0) {
+					if (cursor > 0 && random.nextBoolean())
+						cursor--; // backspace
+					int pos = Math.min(cursor, model.length() - 1);
+					assertEquals(model.charAt(pos), t.delete(pos));
+					model.deleteCharAt(pos);
+				} else {
+					char ch = (char) ('a' + random.nextInt(26));
+					t.add(ch, cursor);
+					model.insert(cursor++, ch);
+				}
+				cursor = Math.min(cursor, model.length());
+				assertEquals(model.length(), t.size());
+				if (model.length() > 0) {
+					int pos = random.nextInt(model.length());
+					assertEquals(model.charAt(pos), t.get(pos));
+					int length = random.nextInt(Math.min(50, model.length() - pos) + 1);
+					assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+				}
+			}
+			assertEquals(model.toString(), t.toString());
+		}
+	}
+
+	@Test
+	public void testPieceTableBounds() {
+		PieceTable t = new PieceTable();
+		t.add('b');
+		t.add('a', 0);
+		t.add('c');
+		assertEquals("abc", t.toString());
+		try {
+			t.add('x', 4);
+			fail("added past the end");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.delete(3);
+			fail("deleted past the end");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.get(1, 3);
+			fail("got past the end");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBufferedEditTree() {
+		for (int capacity : new int[] { 1, 5, 256 }) {
+			EditTree tree = new EditTree("some text to start from\n");
+			BufferedEditTree t = new BufferedEditTree(tree, capacity);
+			StringBuilder model = new StringBuilder(tree.toString());
+			Random random = new Random(capacity);
+			int cursor = model.length();
+			for (int i = 0; i < 5000; i++) {
+				if (random.nextInt(30) == 0)
+					cursor = random.nextInt(model.length() + 1);
+				int action = random.nextInt(6);
+				if (model.length() > 0 && action == 0 && cursor > 0) {
+					assertEquals(model.charAt(--cursor), t.delete(cursor)); // backspace
+					model.deleteCharAt(cursor);
+				} else if (model.length() > cursor && action == 1) {
+					assertEquals(model.charAt(cursor), t.delete(cursor));
+					model.deleteCharAt(cursor);
+				} else {
+					char ch = (char) ('a' + random.nextInt(26));
+					t.add(ch, cursor);
+					model.insert(cursor++, ch);
+				}
+				assertEquals(model.length(), t.size());
+				if (model.length() > 0) {
+					int pos = random.nextInt(model.length());
+					assertEquals(model.charAt(pos), t.get(pos));
+					int length = random.nextInt(model.length() - pos + 1);
+					assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+				}
+			}
+			assertEquals(model.toString(), t.toString());
+			assertEquals(model.toString(), t.tree().toString());
+			assertEquals(model.length(), tree.size());
+		}
+	}
+
+	@Test
+	public void testBufferedEditTreeBoundsDeletes() {
+		EditTree tree = new EditTree("0123456789abcdefghijklmnopqrstuvwxyz");
+		BufferedEditTree t = new BufferedEditTree(tree, 5);
+		t.add('!', 20);
+		for (int pos = 20; pos > 0; pos--)
+			assertEquals("0123456789abcdefghij".charAt(pos - 1), t.delete(pos - 1)); // backspace
+		for (int i = 0; i < 10; i++)
+			assertEquals("klmnopqrstuvwxyz".charAt(i), t.delete(1));
+		// deletes are flushed like adds, so the tree never lags far behind
+		assertTrue(tree.size() - t.size() < 5);
+		assertEquals("!uvwxyz", t.toString());
+		assertEquals("!uvwxyz", t.tree().toString());
+	}
+
+	@Test
+	public void testAdaptiveEditTree() {
+		AdaptiveEditTree t = new AdaptiveEditTree("", 64);
+		StringBuilder model = new StringBuilder();
+		Random random = new Random(44);
+		boolean wasTree = false, backToArray = false;
+		for (int i = 0; i < 20000; i++) {
+			// drift up past the threshold and back down again
+			boolean growing = (i / 2000) % 2 == 0;
+			if (model.length() > 0 && random.nextInt(10) < (growing ? 3 : 7)) {
+				int pos = random.nextInt(model.length());
+				assertEquals(model.charAt(pos), t.delete(pos));
+				model.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(model.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				model.insert(pos, ch);
+			}
+			assertEquals(model.length(), t.size());
+			assertEquals(model.length() > 64 || (t.isTree() && model.length() >= 32), t.isTree());
+			wasTree |= t.isTree();
+			backToArray |= wasTree && !t.isTree();
+			if (model.length() > 0) {
+				int pos = random.nextInt(model.length());
+				assertEquals(model.charAt(pos), t.get(pos));
+				int length = random.nextInt(model.length() - pos + 1);
+				assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+			}
+		}
+		assertTrue(backToArray);
+		assertEquals(model.toString(), t.toString());
+		assertEquals("abc", new AdaptiveEditTree("abc").toString());
+		assertTrue(new AdaptiveEditTree("abc", 2).isTree());
+	}
+
+	@Test
+	public void testSplayEditTree() {
+		Random random = new Random(46);
+		checkTrace(new SplayEditTree(), random, 20000);
+		checkTrace(new SplayEditTree("a chain of characters to splay"), random, 2000);
+		SplayEditTree t = new SplayEditTree();
+		for (int i = 0; i < 100000; i++)
+			t.add((char) ('a' + i % 26));
+		// a long chain straightens out without deep recursion
+		assertEquals('a', t.get(0));
+		assertEquals("abc", t.get(0, 3));
+		assertEquals('d', t.delete(99999));
+		assertEquals(99999, t.toString().length());
+	}
+
+	@Test
+	public void testEditTraceReplay() {
+		Random random = new Random(460);
+		EditTrace trace = new EditTrace("recorded");
+		checkTrace(trace, random, 3000);
+		assertTrue(trace.length() >= 3000);
+		for (Engine engine : Engine.values())
+			assertEquals(trace.toString(), trace.replay(engine).toString());
+		SplayEditTree splay = new SplayEditTree("recorded");
+		assertTrue(trace.replay(splay) > 0);
+		assertEquals(trace.toString(), splay.toString());
+	}
+
+	@Test
+	public void testSplayEditTreeStartsBalanced() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			text.append((char) ('a' + i % 26));
+		SplayEditTree t = new SplayEditTree(text.toString());
+		assertEquals(16, t.slowHeight()); // like EditTree(String), not a chain
+		assertEquals(text.toString(), t.toString());
+		assertEquals('a', t.get(0));
+		assertEquals(-1, new SplayEditTree("").slowHeight());
+		assertEquals(0, new SplayEditTree("x").slowHeight());
+	}
+
+	@Test
+	public void testEditTraceKeepsLongReads() {
+		String text = new String(new char[100000]).replace('\0', 'x');
+		EditTrace trace = new EditTrace(text);
+		trace.get(1, 99999);
+		trace.add('y', 70000);
+		trace.get(0, 70001);
+		int[] read = new int[1];
+		EditTree target = new EditTree(text) {
+			@Override
+			public String get(int pos, int length) {
+				read[0] += length;
+				return super.get(pos, length);
+			}
+		};
+		trace.replay(target);
+		assertEquals(99999 + 70001, read[0]);
+		assertEquals(trace.toString(), target.toString());
+	}
+
+}
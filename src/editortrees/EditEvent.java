@@ -0,0 +1,46 @@
+package editortrees;
+
+/**
+ * a change to the text of an EditTree: removedLength characters at position
+ * were replaced by insertedText
+ */
+public final class EditEvent {
+
+	public final int position;
+	public final int removedLength;
+	public final String insertedText;
+
+	public EditEvent(int position, int removedLength, String insertedText) {
+
+		this.position = position;
+		this.removedLength = removedLength;
+		this.insertedText = insertedText;
+
+	} // EditEvent
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (!(other instanceof EditEvent))
+			return false;
+		EditEvent event = (EditEvent) other;
+		return this.position == event.position && this.removedLength == event.removedLength
+				&& this.insertedText.equals(event.insertedText);
+
+	} // equals
+
+	@Override
+	public int hashCode() {
+
+		return (31 * this.position + this.removedLength) * 31 + this.insertedText.hashCode();
+
+	} // hashCode
+
+	@Override
+	public String toString() {
+
+		return this.position + "-" + this.removedLength + "+\"" + this.insertedText + "\"";
+
+	} // toString
+
+} // end EditEvent
@@ -0,0 +1,127 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * collects the edits of an EditTree into events for its listeners until they
+ * are flushed
+ * 
+ * with coalescing on, an edit that touches the text of the latest event is
+ * folded into it, so typing or deleting a run of characters becomes one event
+ */
+class EditEvents {
+
+	private final ArrayList<EditListener> listeners;
+	private boolean coalescing;
+	private final ArrayList<EditEvent> batch; // events before the latest one
+
+	// the latest event, still open to coalescing
+	private boolean open;
+	private int position;
+	private int removed;
+	private final StringBuilder inserted;
+
+	EditEvents(boolean coalescing) {
+
+		this.listeners = new ArrayList<EditListener>();
+		this.coalescing = coalescing;
+		this.batch = new ArrayList<EditEvent>();
+		this.open = false;
+		this.inserted = new StringBuilder();
+
+	} // EditEvents
+
+	void addListener(EditListener listener) {
+
+		this.listeners.add(listener);
+
+	} // addListener
+
+	void removeListener(EditListener listener) {
+
+		this.listeners.remove(listener);
+
+	} // removeListener
+
+	boolean hasListeners() {
+
+		return !this.listeners.isEmpty();
+
+	} // hasListeners
+
+	void setCoalescing(boolean coalescing) {
+
+		this.close();
+		this.coalescing = coalescing;
+
+	} // setCoalescing
+
+	/**
+	 * records that removed characters at pos were replaced by inserted
+	 * works in O(1) amortized time, plus the length of the open event's text
+	 * when the edit lands inside it
+	 */
+	void edited(int pos, int removed, CharSequence inserted) {
+
+		if (!this.open || !this.coalescing || !this.touches(pos, removed)) {
+			this.close();
+			this.open = true;
+			this.position = pos;
+			this.removed = removed;
+			this.inserted.append(inserted);
+			return;
+		}
+
+		// the deleted range is taken out of the open event's text, and whatever
+		// it covers outside of that text was in the text before the event
+		int length = this.inserted.length();
+		this.removed += Math.max(0, this.position - pos) + Math.max(0, pos + removed - (this.position + length));
+		int from = Math.max(pos, this.position) - this.position;
+		int to = Math.min(pos + removed, this.position + length) - this.position;
+		if (from < to)
+			this.inserted.delete(from, to);
+		this.position = Math.min(this.position, pos);
+
+		this.inserted.insert(pos - this.position, inserted);
+
+	} // edited
+
+	/**
+	 * @return true iff an edit of removed characters at pos overlaps or touches
+	 *         the text of the open event
+	 */
+	private boolean touches(int pos, int removed) {
+
+		return pos <= this.position + this.inserted.length() && pos + removed >= this.position;
+
+	} // touches
+
+	/**
+	 * moves the open event into the batch
+	 */
+	private void close() {
+
+		if (!this.open) return;
+		this.batch.add(new EditEvent(this.position, this.removed, this.inserted.toString()));
+		this.inserted.setLength(0);
+		this.open = false;
+
+	} // close
+
+	/**
+	 * hands every event since the previous flush to the listeners
+	 */
+	void flush() {
+
+		this.close();
+		if (this.batch.isEmpty()) return;
+
+		List<EditEvent> events = new ArrayList<EditEvent>(this.batch);
+		this.batch.clear();
+		for (EditListener listener : new ArrayList<EditListener>(this.listeners))
+			listener.edited(events);
+
+	} // flush
+
+} // end EditEvents
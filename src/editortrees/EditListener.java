@@ -0,0 +1,16 @@
+package editortrees;
+
+import java.util.List;
+
+/**
+ * receives the changes made to an EditTree each time they are flushed
+ */
+public interface EditListener {
+
+	/**
+	 * @param events the changes since the previous flush, in the order they were
+	 *               made, each in terms of the text left by the ones before it
+	 */
+	void edited(List<EditEvent> events);
+
+} // end EditListener
@@ -0,0 +1,293 @@
+package editortrees;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * publishes the changes to an EditTree, as they are flushed, to subscribers
+ * that may each consume them at their own rate
+ *
+ * every subscriber starts from empty text: its first event inserts the whole
+ * tree, and applying the events in order keeps a copy of the tree. each one
+ * queues at most capacity events. when a slow subscriber's queue is full, the
+ * queue is dropped for one event that replaces all of its text with the text
+ * of the tree, so memory stays bounded and the copy still catches up.
+ *
+ * the tree is only read on the thread that edits it. events are handed to
+ * subscribers on the executor, one at a time per subscriber.
+ */
+public class EditPublisher implements Flow.Publisher<EditEvent>, EditListener {
+
+	private final EditTree tree;
+	private final Executor executor;
+	private final int capacity;
+	private final CopyOnWriteArrayList<Subscription> subscriptions;
+	private boolean closed;
+
+	/**
+	 * the text of the tree at some point in its event stream, which replaces
+	 * whatever a subscriber has
+	 */
+	private static final class Snapshot {
+
+		final String text;
+
+		Snapshot(String text) {
+
+			this.text = text;
+
+		} // Snapshot
+
+	} // end Snapshot
+
+	EditPublisher(EditTree tree, Executor executor, int capacity) {
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.tree = tree;
+		this.executor = executor;
+		this.capacity = capacity;
+		this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+		this.closed = false;
+		this.tree.addEditListener(this);
+
+	} // EditPublisher
+
+	/**
+	 * starts sending changes to subscriber. must be called on the thread that
+	 * edits the tree, since it flushes the tree's edits and reads its text.
+	 * works in O(N) time
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super EditEvent> subscriber) {
+
+		if (subscriber == null)
+			throw new NullPointerException();
+		this.tree.flushEdits();
+		Subscription subscription = new Subscription(subscriber);
+		if (this.closed) {
+			subscription.complete();
+			return;
+		}
+		subscription.offer(new Snapshot(this.tree.toString()));
+		this.subscriptions.add(subscription);
+
+	} // subscribe
+
+	/**
+	 * queues events for every subscriber, works in O(S * E) time for S
+	 * subscribers and E events, plus O(N) when some subscriber falls behind
+	 */
+	@Override
+	public void edited(List<EditEvent> events) {
+
+		Snapshot snapshot = null;
+		for (Subscription subscription : this.subscriptions) {
+			if (subscription.isCancelled()) {
+				this.subscriptions.remove(subscription);
+				continue;
+			}
+			if (!subscription.offer(events)) {
+				// the listener is told after the last event, so the tree holds the
+				// text every event leads to
+				if (snapshot == null)
+					snapshot = new Snapshot(this.tree.toString());
+				subscription.offer(snapshot);
+			}
+		}
+
+	} // edited
+
+	/**
+	 * stops publishing: flushes the tree's edits, and each subscriber is
+	 * completed once it has taken what is queued for it
+	 */
+	public void close() {
+
+		if (this.closed)
+			return;
+		this.tree.flushEdits();
+		this.closed = true;
+		this.tree.removeEditListener(this);
+		for (Subscription subscription : this.subscriptions)
+			subscription.complete();
+		this.subscriptions.clear();
+
+	} // close
+
+	/**
+	 * one subscriber's queue and demand
+	 */
+	private final class Subscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super EditEvent> subscriber;
+		private final ArrayDeque<Object> queue; // events and snapshots, guarded by this
+		private final AtomicLong demand;
+		private final AtomicInteger work; // signals not yet handled by run
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile Throwable error;
+		private boolean started; // only used by run
+		private int length; // of the subscriber's copy, only used by run
+
+		Subscription(Flow.Subscriber<? super EditEvent> subscriber) {
+
+			this.subscriber = subscriber;
+			this.queue = new ArrayDeque<Object>();
+			this.demand = new AtomicLong();
+			this.work = new AtomicInteger();
+			this.cancelled = false;
+			this.completed = false;
+			this.started = false;
+			this.length = 0;
+
+		} // Subscription
+
+		boolean isCancelled() {
+
+			return this.cancelled;
+
+		} // isCancelled
+
+		/**
+		 * @return false if the events do not fit, in which case none are queued
+		 */
+		boolean offer(List<EditEvent> events) {
+
+			synchronized (this) {
+				if (this.queue.size() + events.size() > EditPublisher.this.capacity)
+					return false;
+				this.queue.addAll(events);
+			}
+			this.signal();
+			return true;
+
+		} // offer
+
+		/**
+		 * queues snapshot in place of everything still queued
+		 */
+		void offer(Snapshot snapshot) {
+
+			synchronized (this) {
+				this.queue.clear();
+				this.queue.add(snapshot);
+			}
+			this.signal();
+
+		} // offer
+
+		void complete() {
+
+			this.completed = true;
+			this.signal();
+
+		} // complete
+
+		@Override
+		public void request(long n) {
+
+			if (n <= 0) {
+				this.error = new IllegalArgumentException("non-positive request: " + n);
+			} else {
+				long current, next;
+				do {
+					current = this.demand.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while (!this.demand.compareAndSet(current, next));
+			}
+			this.signal();
+
+		} // request
+
+		@Override
+		public void cancel() {
+
+			this.cancelled = true;
+			synchronized (this) {
+				this.queue.clear();
+			}
+
+		} // cancel
+
+		/**
+		 * makes sure run goes over the queue again, on the executor unless it is
+		 * already running
+		 */
+		private void signal() {
+
+			if (this.work.getAndIncrement() == 0)
+				EditPublisher.this.executor.execute(this);
+
+		} // signal
+
+		/**
+		 * hands queued events to the subscriber while it wants them
+		 */
+		@Override
+		public void run() {
+
+			int missed = 1;
+			do {
+				if (!this.started) {
+					this.started = true;
+					this.subscriber.onSubscribe(this);
+				}
+				while (!this.cancelled && this.error == null && this.demand.get() > 0) {
+					Object item;
+					synchronized (this) {
+						item = this.queue.poll();
+					}
+					if (item == null)
+						break;
+					if (this.demand.get() != Long.MAX_VALUE)
+						this.demand.decrementAndGet();
+					try {
+						this.subscriber.onNext(this.toEvent(item));
+					} catch (RuntimeException e) {
+						this.cancel(); // a failing subscriber is dropped
+					}
+				}
+				if (!this.cancelled) {
+					if (this.error != null) {
+						this.cancel();
+						this.subscriber.onError(this.error);
+					} else if (this.completed && this.isEmpty()) {
+						this.cancelled = true;
+						this.subscriber.onComplete();
+					}
+				}
+				missed = this.work.addAndGet(-missed);
+			} while (missed != 0);
+
+		} // run
+
+		private synchronized boolean isEmpty() {
+
+			return this.queue.isEmpty();
+
+		} // isEmpty
+
+		/**
+		 * @return item as an event on the subscriber's copy, which it then updates
+		 */
+		private EditEvent toEvent(Object item) {
+
+			EditEvent event;
+			if (item instanceof Snapshot)
+				event = new EditEvent(0, this.length, ((Snapshot) item).text);
+			else
+				event = (EditEvent) item;
+			this.length += event.insertedText.length() - event.removedLength;
+			return event;
+
+		} // toEvent
+
+	} // end Subscription
+
+} // end EditPublisher
@@ -0,0 +1,150 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * a TextBuffer that records every call made to it, so the same calls can be
+ * replayed on other engines to compare them
+ */
+public class EditTrace implements TextBuffer {
+
+	private static final byte ADD = 0, DELETE = 1, GET = 2, GET_RANGE = 3;
+
+	private final String initial;
+	private final TextBuffer buffer;
+	private byte[] kinds;
+	private int[] positions;
+	private int[] values; // the character added, deleted or read, or the length of a range
+	private int count;
+
+	/**
+	 * records the calls made to a buffer that starts out holding initial
+	 */
+	public EditTrace(String initial) {
+
+		this.initial = initial;
+		this.buffer = new EditTree(initial);
+		this.kinds = new byte[64];
+		this.positions = new int[64];
+		this.values = new int[64];
+		this.count = 0;
+
+	} // EditTrace
+
+	/**
+	 * @return the number of calls recorded
+	 */
+	public int length() {
+
+		return this.count;
+
+	} // length
+
+	private void record(byte kind, int pos, int value) {
+
+		if (this.count == this.kinds.length) {
+			this.kinds = Arrays.copyOf(this.kinds, 2 * this.count);
+			this.positions = Arrays.copyOf(this.positions, 2 * this.count);
+			this.values = Arrays.copyOf(this.values, 2 * this.count);
+		}
+		this.kinds[this.count] = kind;
+		this.positions[this.count] = pos;
+		this.values[this.count] = value;
+		this.count++;
+
+	} // record
+
+	/**
+	 * makes the recorded calls on a buffer of engine that starts out holding
+	 * the same text as this trace did
+	 * 
+	 * @return the buffer after the calls, for checking
+	 */
+	public TextBuffer replay(TextBuffers.Engine engine) {
+
+		TextBuffer target = engine.create(this.initial);
+		this.replay(target);
+		return target;
+
+	} // replay
+
+	/**
+	 * makes the recorded calls on target, which must hold the text this trace
+	 * started out holding
+	 * 
+	 * @return the time the calls took, in nanoseconds
+	 */
+	public long replay(TextBuffer target) {
+
+		long start = System.nanoTime();
+		for (int i = 0; i < this.count; i++) {
+			switch (this.kinds[i]) {
+			case ADD:
+				target.add((char) this.values[i], this.positions[i]);
+				break;
+			case DELETE:
+				target.delete(this.positions[i]);
+				break;
+			case GET:
+				target.get(this.positions[i]);
+				break;
+			case GET_RANGE:
+				target.get(this.positions[i], this.values[i]);
+				break;
+			}
+		}
+		return System.nanoTime() - start;
+
+	} // replay
+
+	public int size() {
+
+		return this.buffer.size();
+
+	} // size
+
+	public void add(char ch) {
+
+		this.add(ch, this.buffer.size());
+
+	} // add
+
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		this.buffer.add(ch, pos);
+		this.record(ADD, pos, ch);
+
+	} // add
+
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		char ch = this.buffer.delete(pos);
+		this.record(DELETE, pos, ch);
+		return ch;
+
+	} // delete
+
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		char ch = this.buffer.get(pos);
+		this.record(GET, pos, ch);
+		return ch;
+
+	} // get
+
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		String s = this.buffer.get(pos, length);
+		this.record(GET_RANGE, pos, length);
+		return s;
+
+	} // get
+
+	@Override
+	public String toString() {
+
+		return this.buffer.toString();
+
+	} // toString
+
+} // end EditTrace
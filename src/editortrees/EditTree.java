@@ -1,6 +1,18 @@
 package editortrees;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import editortrees.Node.NodeAndHeight;
 
 /**
  * a height-balanced binary tree with rank that could be the basis for a text
@@ -9,12 +21,26 @@ import java.util.ArrayList;
  * @author Jared Kagay
  * @author Ethan Townsend
  */
-public class EditTree {
+public class EditTree implements TextBuffer {
+
+	private static final int LAZY_TRANSFORM_LENGTH = 1 << 14; // shorter ranges are rewritten
 
 	private DisplayableBinaryTree display; // used for graphics
 
 	private int rotations;
 	private int size;
+	private Aggregates aggregates; // summaries kept by every node, null if none
+	private CharacterCounts counts; // kept by trackCharacterCounts, null if none
+	private MarkerTree anchors; // null until the first anchor is created
+	private DecorationTree decorations; // null until the first decoration is created
+	private DirtyRanges dirty; // null until dirty ranges are first drained
+	private EditEvents events; // null until the first listener is added
+	private boolean separateEdits; // set by setEditCoalescing(false)
+	private double heightFactor; // set by relaxBalance, 0 while adds rotate
+	private double[] relaxedSizes; // 2^(d / heightFactor) for each height d, set by relaxBalance
+	private boolean tagged; // whether some node is tagged UNKNOWN by a relaxed add
+	private GapBuffer burst; // relaxed adds at one place not linked in yet, null if none
+	private int burstPos; // where the burst goes
 	Node root;
 
 	/**
@@ -52,9 +78,12 @@ public class EditTree {
 	 */
 	public EditTree(EditTree e) {
 
+		e.repairBalance();
 		this.root = new Node(e.root.data).copyTree(e.root);
 		this.size = e.size();
 		this.rotations = 0;
+		this.aggregates = e.aggregates;
+		this.counts = e.counts;
 
 	} // EditTree
 
@@ -72,6 +101,76 @@ public class EditTree {
 
 	} // EditTree
 
+	/**
+	 * creates an EditTree holding chars, shaped like the tree EditTree(String)
+	 * builds
+	 * works in O(N) time
+	 */
+	private EditTree(char[] chars) {
+
+		this.root = new Node().buildTree(chars, 0, chars.length).node;
+		this.size = chars.length;
+		this.rotations = 0;
+
+	} // EditTree
+
+	/**
+	 * writes a binary snapshot of the characters of this tree, with a version
+	 * header and a checksum, that readSnapshot turns back into this tree
+	 * works in O(N) time
+	 * 
+	 * @param channel where the snapshot goes
+	 * @throws IOException if writing fails
+	 */
+	public void writeSnapshot(WritableByteChannel channel) throws IOException {
+
+		TreeSnapshot.write(this.root(), this.size, channel);
+
+	} // writeSnapshot
+
+	/**
+	 * writes a snapshot to the file at path, replacing it
+	 * 
+	 * @see #writeSnapshot(WritableByteChannel)
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			this.writeSnapshot(channel);
+		}
+
+	} // writeSnapshot
+
+	/**
+	 * reads a snapshot made by writeSnapshot in bulk and builds the tree straight
+	 * from its characters, with the same shape as EditTree(String)
+	 * works in O(N) time
+	 * 
+	 * @param channel where the snapshot comes from
+	 * @return the tree in the snapshot
+	 * @throws IOException if reading fails, or the snapshot is cut short, of
+	 *                     another version or fails its checksum
+	 */
+	public static EditTree readSnapshot(ReadableByteChannel channel) throws IOException {
+
+		return new EditTree(TreeSnapshot.read(channel));
+
+	} // readSnapshot
+
+	/**
+	 * reads the snapshot in the file at path
+	 * 
+	 * @see #readSnapshot(ReadableByteChannel)
+	 */
+	public static EditTree readSnapshot(Path path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return readSnapshot(channel);
+		}
+
+	} // readSnapshot
+
 	/**
 	 * @return the number of nodes in this tree in O(1) time
 	 */
@@ -89,10 +188,16 @@ public class EditTree {
 	 */
 	public void add(char ch) {
 
+		if (this.heightFactor > 0) {
+			this.addRelaxed(ch, this.size);
+			return;
+		}
+
 		NodeInfo nodeInfo = new NodeInfo();
 		this.root = this.root.add(ch, nodeInfo);
 		this.rotations += nodeInfo.spins;
 		this.size++;
+		this.edited(this.size - 1, 0, String.valueOf(ch));
 
 	}
 
@@ -109,14 +214,258 @@ public class EditTree {
 		// must check for valid index
 		if (pos > this.size || pos < 0)
 			throw new IndexOutOfBoundsException();
+		if (this.heightFactor > 0) {
+			this.addRelaxed(ch, pos);
+			return;
+		}
 
 		NodeInfo nodeInfo = new NodeInfo();
 		this.root = this.root.add(ch, pos, nodeInfo);
 		this.rotations += nodeInfo.spins;
 		size++;
+		this.edited(pos, 0, String.valueOf(ch));
 
 	} // add
 
+	/**
+	 * adds ch to the burst, which first is linked in unless pos is inside it
+	 * works in O(1) amortized time for adds next to one another
+	 */
+	private void addRelaxed(char ch, int pos) {
+
+		if (this.burst != null && (pos < this.burstPos || pos > this.burstPos + this.burst.length()))
+			this.linkBurst();
+		if (this.burst == null) {
+			this.burst = new GapBuffer(16);
+			this.burstPos = pos;
+		}
+		this.burst.insert(pos - this.burstPos, ch);
+		size++;
+		this.edited(pos, 0, String.valueOf(ch));
+
+	} // addRelaxed
+
+	/**
+	 * links the burst into the tree: a lone character without rotating, and
+	 * more as one balanced subtree
+	 * works in O(length + log(N)) time, or O(log(N)) amortized for one character
+	 */
+	private void linkBurst() {
+
+		if (this.burst == null) return;
+		char[] chars = this.burst.toString().toCharArray();
+		this.burst = null;
+
+		if (chars.length > 1) {
+			this.repairBalance();
+			this.link(chars, this.burstPos);
+			return;
+		}
+		NodeInfo nodeInfo = new NodeInfo();
+		nodeInfo.heightFactor = this.heightFactor;
+		nodeInfo.sizes = this.relaxedSizes;
+		nodeInfo.size = this.size;
+		this.root = this.root.addRelaxed(chars[0], this.burstPos, nodeInfo, 0);
+		this.rotations += nodeInfo.spins;
+		this.tagged = true;
+
+	} // linkBurst
+
+	/**
+	 * @return the root, once relaxed adds not linked in yet are
+	 */
+	private Node root() {
+
+		this.linkBurst();
+		return this.root;
+
+	} // root
+
+	/**
+	 * reverses the order of the characters from pos to pos + length, as UTF-16
+	 * units, so surrogate pairs in the range end up split. the range is split
+	 * off, its root tagged and the tree joined again, and the tag reaches the
+	 * rest of the range only as it is visited. the hashes, code point counts and
+	 * UTF-8 lengths kept for rangeHash, codePointCount and byteOffsetOf reverse
+	 * along with the tag, but with an aggregate that is not reversible, such as
+	 * a VisualWidth, the range is rebuilt instead.
+	 * works in O(log(N)) time, or O(length + log(N)) with such an aggregate
+	 * 
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public void reverse(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+		if (length < 2)
+			return;
+
+		if (this.aggregates == null || this.aggregates.reversible()) {
+			this.tagRange(pos, length, Node::reverse);
+		} else {
+			char[] chars = this.get(pos, length).toCharArray();
+			for (int i = 0, j = length - 1; i < j; i++, j--) {
+				char ch = chars[i];
+				chars[i] = chars[j];
+				chars[j] = ch;
+			}
+			this.rebuildRange(pos, length, chars);
+		}
+		this.rewritten(pos, length, true);
+
+	} // reverse
+
+	/**
+	 * applies op to every character from pos to pos + length, the same way
+	 * reverse tags a range. ranges too short to be worth a tag and ops that make
+	 * or unmake newlines are rewritten instead, and so are ops that change a
+	 * summary the tree keeps: one that changes a character's UTF-8 length once
+	 * byteOffsetOf has been called, or any op once rangeHash has been called.
+	 * works in O(log(N)) time, plus O(length) when rewritten, plus one call of
+	 * op, and of each aggregate, for every char value the first time op is used
+	 * 
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public void transform(int pos, int length, CharTransform op) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+		if (length == 0)
+			return;
+
+		LazyTransform lazy = null;
+		if (length > LAZY_TRANSFORM_LENGTH)
+			lazy = LazyTransform.of(op);
+		if (lazy != null && this.aggregates != null && !this.aggregates.keeps(lazy))
+			lazy = null;
+
+		if (lazy != null) {
+			LazyTransform tag = lazy;
+			this.tagRange(pos, length, node -> node.transform(tag));
+		} else {
+			char[] chars = this.get(pos, length).toCharArray();
+			for (int i = 0; i < length; i++)
+				chars[i] = op.apply(chars[i]);
+			this.rebuildRange(pos, length, chars);
+		}
+		this.rewritten(pos, length, false);
+
+	} // transform
+
+	/**
+	 * splits off the length characters from pos, tags the root of their
+	 * subtree, and joins the tree again, in O(log(N)) time
+	 */
+	private void tagRange(int pos, int length, Consumer<Node> tag) {
+
+		this.repairBalance();
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] front = Node.split(this.root(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight[] back = Node.split(front[1].node, front[1].height, length, nodeInfo);
+		tag.accept(back[0].node);
+		NodeAndHeight joined = Node.concatenate(front[0], back[0], nodeInfo);
+		this.root = Node.concatenate(joined, back[1], nodeInfo).node;
+		this.rotations += nodeInfo.spins;
+
+	} // tagRange
+
+	/**
+	 * replaces the length characters from pos with chars, which are as many, in
+	 * O(length + log(N)) time
+	 */
+	private void rebuildRange(int pos, int length, char[] chars) {
+
+		this.repairBalance();
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] front = Node.split(this.root(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight[] back = Node.split(front[1].node, front[1].height, length, nodeInfo);
+		NodeAndHeight middle = new Node().buildTree(chars, 0, chars.length);
+		if (this.aggregates != null)
+			middle.node.useAggregates(this.aggregates);
+		NodeAndHeight joined = Node.concatenate(front[0], middle, nodeInfo);
+		this.root = Node.concatenate(joined, back[1], nodeInfo).node;
+		this.rotations += nodeInfo.spins;
+
+	} // rebuildRange
+
+	/**
+	 * tells everything that follows this tree that the length characters from
+	 * pos were rewritten in place
+	 * 
+	 * @param moved whether characters moved within the range, which moves the
+	 *              markers inside it like a replacement does
+	 */
+	private void rewritten(int pos, int length, boolean moved) {
+
+		if (moved) {
+			moveMarkers(this.anchors, pos, length, length);
+			moveMarkers(this.decorations, pos, length, length);
+		}
+		if (this.dirty != null)
+			this.dirty.edited(pos, length, length);
+		if (this.events != null)
+			this.events.edited(pos, length, this.get(pos, length));
+
+	} // rewritten
+
+	/**
+	 * makes later adds skip rebalancing, for bursts of adds like imports. adds
+	 * next to one another are collected, and linked in together as a balanced
+	 * subtree by the next operation that reads the tree or adds elsewhere. a
+	 * lone add is linked in without rotating: the nodes it passes are tagged,
+	 * and rebalanced together by restoreBalance or by the next operation that
+	 * needs balance codes. a subtree that grows more than heightFactor times as
+	 * tall as a balanced one is rebalanced, so the tree stays at most about
+	 * heightFactor * log2(N) tall.
+	 * works in O(heightFactor) time, relaxed adds in a burst in O(1) amortized
+	 * time, and lone relaxed adds in O(log(N)) amortized time
+	 * 
+	 * @param heightFactor how many times the height of a balanced tree a relaxed
+	 *                     tree may reach, at least 1.5
+	 * @throws IllegalArgumentException if heightFactor is less than 1.5
+	 */
+	public void relaxBalance(double heightFactor) throws IllegalArgumentException {
+
+		if (!(heightFactor >= 1.5))
+			throw new IllegalArgumentException("height factor must be at least 1.5: " + heightFactor);
+		this.heightFactor = heightFactor;
+
+		// no tree of N < 2^31 characters gets taller than heightFactor * 31 + 1
+		double[] sizes = new double[(int) Math.min(heightFactor * 32 + 2, 4096)];
+		for (int height = 0; height < sizes.length; height++)
+			sizes[height] = Math.pow(2, height / heightFactor);
+		this.relaxedSizes = sizes;
+
+	} // relaxBalance
+
+	/**
+	 * rebalances the nodes tagged by relaxed adds and makes adds rotate again
+	 * works in O(T * log(N)) time for T tagged nodes
+	 */
+	public void restoreBalance() {
+
+		this.repairBalance();
+		this.heightFactor = 0;
+
+	} // restoreBalance
+
+	/**
+	 * rebalances the nodes tagged by relaxed adds, before anything that relies
+	 * on balance codes
+	 */
+	private void repairBalance() {
+
+		this.linkBurst();
+		if (!this.tagged) return;
+		NodeInfo nodeInfo = new NodeInfo();
+		this.root = Node.repair(this.root(), nodeInfo).node;
+		this.rotations += nodeInfo.spins;
+		this.tagged = false;
+
+	} // repairBalance
+
 	/**
 	 * gets the element of the tree at that index
 	 * 
@@ -129,7 +478,7 @@ public class EditTree {
 		if (pos < 0 || pos >= this.size)
 			throw new IndexOutOfBoundsException();
 
-		return this.root.get(pos).data;
+		return this.root().get(pos).data;
 
 	}
 
@@ -138,7 +487,7 @@ public class EditTree {
 	 */
 	public int slowHeight() {
 
-		return this.root.slowHeight();
+		return this.root().slowHeight();
 
 	} // slowHeight
 
@@ -147,7 +496,7 @@ public class EditTree {
 	 */
 	public int slowSize() {
 
-		return this.root.slowSize();
+		return this.root().slowSize();
 
 	} // slowSize
 
@@ -159,7 +508,7 @@ public class EditTree {
 	 */
 	public boolean ranksMatchLeftSubtreeSize() {
 
-		return this.root.ranksMatchLeftSubtreeSize().balanced;
+		return this.root().ranksMatchLeftSubtreeSize().balanced;
 
 	} // ranksMatchLeftSubtreeSize
 
@@ -174,7 +523,7 @@ public class EditTree {
 	public String toRankString() {
 
 		ArrayList<String> list = new ArrayList<String>();
-		this.root.toRankString(list);
+		this.root().toRankString(list);
 		return list.toString();
 
 	} // toRankString
@@ -186,7 +535,7 @@ public class EditTree {
 	public String toString() {
 
 		StringBuilder bob = new StringBuilder(); //bob the StringBuilder 
-		this.root.toString(bob); //(Can fix it? yes he can)
+		this.root().toString(bob); //(Can fix it? yes he can)
 		return bob.toString();
 
 	} // toString
@@ -198,7 +547,8 @@ public class EditTree {
 	 */
 	public int fastHeight() {
 
-		return this.root.fastHeight();
+		this.repairBalance();
+		return this.root().fastHeight();
 
 	} // fastHeight
 
@@ -213,7 +563,8 @@ public class EditTree {
 	 */
 	public String toDebugString() {
 
-		String str = this.root.toDebugString("");
+		this.repairBalance();
+		String str = this.root().toDebugString("");
 		if (str.length() < 1)
 			return "[" + str + "]"; // empty tree
 		return "[" + str.substring(0, str.length() - 2) + "]";
@@ -239,7 +590,8 @@ public class EditTree {
 	 */
 	public boolean balanceCodesAreCorrect() {
 
-		return this.root.getHeightAndIsBalanced().balanced;
+		this.repairBalance();
+		return this.root().getHeightAndIsBalanced().balanced;
 
 	} // balanceCodesAreCorrect
 
@@ -254,16 +606,476 @@ public class EditTree {
 
 		if (pos < 0 || pos >= this.size)
 			throw new IndexOutOfBoundsException();
+		this.repairBalance();
 
 		NodeInfo nodeInfo = new NodeInfo();
-		this.root = this.root.delete(pos, nodeInfo);
+		this.root = this.root().delete(pos, nodeInfo);
 
 		this.size--;
 		this.rotations += nodeInfo.spins;
+		this.edited(pos, 1, "");
 		return nodeInfo.deletedData;
 
 	} // delete
 
+	/**
+	 * adds all the characters of s at pos, as if each were added in turn, by
+	 * building them into a balanced tree and joining it in
+	 * works in O(length + log(N)) time
+	 * 
+	 * @param s   characters to add
+	 * @param pos position the first of them ends up at, from 0 to the size of the
+	 *            tree, inclusive
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public void add(String s, int pos) throws IndexOutOfBoundsException {
+
+		if (pos > this.size || pos < 0)
+			throw new IndexOutOfBoundsException();
+		if (s.isEmpty())
+			return;
+		this.repairBalance();
+
+		this.link(s.toCharArray(), pos);
+		this.size += s.length();
+		this.edited(pos, 0, s);
+
+	} // add
+
+	/**
+	 * builds chars into a balanced tree and joins it in at pos, leaving size,
+	 * markers and listeners to the caller
+	 * works in O(length + log(N)) time
+	 */
+	private void link(char[] chars, int pos) {
+
+		// the first and last characters become the nodes that join the pieces
+		NodeAndHeight inside = new Node().buildTree(chars, 1, Math.max(chars.length - 1, 1));
+		if (this.aggregates != null)
+			inside.node.useAggregates(this.aggregates);
+
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] parts = Node.split(this.root, this.root.fastHeight(), pos, nodeInfo);
+		NodeAndHeight front = Node.join(parts[0].node, parts[0].height, new Node(chars[0], this.aggregates),
+				inside.node, inside.height, nodeInfo);
+		if (chars.length > 1)
+			front = Node.join(front.node, front.height, new Node(chars[chars.length - 1], this.aggregates),
+					parts[1].node, parts[1].height, nodeInfo);
+		else
+			front = Node.concatenate(front, parts[1], nodeInfo);
+		this.root = front.node;
+		this.rotations += nodeInfo.spins;
+
+	} // link
+
+	/**
+	 * deletes the length characters from pos, as if each were deleted in turn, by
+	 * splitting them off and joining what is left
+	 * works in O(length + log(N)) time
+	 * 
+	 * @param pos    position of the first character to delete
+	 * @param length number of characters to delete
+	 * @return the deleted characters
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public String delete(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+		if (length == 0)
+			return "";
+		this.repairBalance();
+
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] front = Node.split(this.root(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight[] back = Node.split(front[1].node, front[1].height, length, nodeInfo);
+		this.root = Node.concatenate(front[0], back[1], nodeInfo).node;
+
+		StringBuilder deleted = new StringBuilder(length);
+		back[0].node.toString(deleted);
+
+		this.size -= length;
+		this.rotations += nodeInfo.spins;
+		this.edited(pos, length, "");
+		return deleted.toString();
+
+	} // delete
+
+	/**
+	 * moves the length characters from pos so they start at to, by splitting
+	 * off their subtree and joining it back in elsewhere, without visiting them.
+	 * anchors, decorations, dirty ranges and listeners see the characters
+	 * deleted and then added again.
+	 * works in O(log(N)) time, plus O(length) for edit listeners
+	 *
+	 * @param pos    position of the first character to move
+	 * @param length number of characters to move
+	 * @param to     position the first of them ends up at, from 0 to the size of
+	 *               the tree without them, inclusive
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree, and
+	 *                                   to is one once they are taken out
+	 */
+	public void move(int pos, int length, int to) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size || to < 0 || to > this.size - length)
+			throw new IndexOutOfBoundsException();
+		if (length == 0 || to == pos)
+			return;
+		this.repairBalance();
+
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] front = Node.split(this.root(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight[] back = Node.split(front[1].node, front[1].height, length, nodeInfo);
+		NodeAndHeight rest = Node.concatenate(front[0], back[1], nodeInfo);
+		NodeAndHeight[] parts = Node.split(rest.node, rest.height, to, nodeInfo);
+		NodeAndHeight joined = Node.concatenate(parts[0], back[0], nodeInfo);
+		this.root = Node.concatenate(joined, parts[1], nodeInfo).node;
+		this.rotations += nodeInfo.spins;
+
+		this.edited(pos, length, "");
+		this.added(to, length);
+
+	} // move
+
+	/**
+	 * makes a tree of the length characters from pos that shares their subtrees
+	 * with this one instead of copying them. either tree copies a shared node
+	 * the first time it goes below it, so the trees can change independently.
+	 * the copy keeps the same aggregates as this tree.
+	 * works in O(log(N)) time and space
+	 *
+	 * @param pos    position of the first character to copy
+	 * @param length number of characters to copy
+	 * @return the new tree
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public EditTree copyRange(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+		this.repairBalance();
+
+		EditTree copy = new EditTree();
+		copy.aggregates = this.aggregates;
+		copy.counts = this.counts;
+		if (length == 0)
+			return copy;
+
+		// splitting a copy of the root leaves this tree's nodes as they are
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] front = Node.split(this.root().copy(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight[] back = Node.split(front[1].node, front[1].height, length, nodeInfo);
+		copy.root = back[0].node;
+		copy.size = length;
+		return copy;
+
+	} // copyRange
+
+	/**
+	 * adds all the characters of other at pos, sharing its subtrees the way
+	 * copyRange does, so other is left as it was. if other keeps different
+	 * aggregates from this tree, or equal ones registered in another order, its
+	 * characters are added as a string instead.
+	 * works in O(log(N) + log(M)) time for M characters, or O(M + log(N)) when
+	 * they are added as a string, plus O(M) for edit listeners
+	 *
+	 * @param other the tree whose characters to add, which may be this one
+	 * @param pos   position the first of them ends up at, from 0 to the size of
+	 *              this tree, inclusive
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public void insertTree(EditTree other, int pos) throws IndexOutOfBoundsException {
+
+		if (pos > this.size || pos < 0)
+			throw new IndexOutOfBoundsException();
+		if (other.size == 0)
+			return;
+		if (!Aggregates.same(other.aggregates, this.aggregates)) {
+			this.add(other.toString(), pos);
+			return;
+		}
+		this.repairBalance();
+		other.repairBalance();
+
+		int length = other.size;
+		NodeAndHeight inserted = new NodeAndHeight(other.root.copy(), other.root.fastHeight());
+		NodeInfo nodeInfo = new NodeInfo();
+		NodeAndHeight[] parts = Node.split(this.root(), this.root().fastHeight(), pos, nodeInfo);
+		NodeAndHeight joined = Node.concatenate(parts[0], inserted, nodeInfo);
+		this.root = Node.concatenate(joined, parts[1], nodeInfo).node;
+
+		this.size += length;
+		this.rotations += nodeInfo.spins;
+		this.added(pos, length);
+
+	} // insertTree
+
+	/**
+	 * creates an anchor that keeps following the text around pos as it changes
+	 * works in O(log(M)) expected time for M anchors
+	 * 
+	 * @param pos     position of the anchor, from 0 to the size of the tree,
+	 *                inclusive
+	 * @param gravity which side the anchor sticks to when text is added at it
+	 * @return the anchor
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public Anchor createAnchor(int pos, Anchor.Gravity gravity) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size)
+			throw new IndexOutOfBoundsException();
+
+		if (this.anchors == null)
+			this.anchors = new MarkerTree();
+		Anchor anchor = new Anchor(pos, gravity, this.anchors.nextPriority());
+		this.anchors.add(anchor);
+		return anchor;
+
+	} // createAnchor
+
+	/**
+	 * stops the anchor from following the text, in O(log(M)) expected time
+	 * 
+	 * @param anchor an anchor created by this tree
+	 * @throws IllegalArgumentException if the anchor is not attached to this tree
+	 */
+	public void removeAnchor(Anchor anchor) {
+
+		if (anchor.tree == null || anchor.tree != this.anchors)
+			throw new IllegalArgumentException("anchor is not attached to this tree");
+
+		this.anchors.remove(anchor);
+
+	} // removeAnchor
+
+	/**
+	 * decorates a span of text so that it does not grow when text is added at
+	 * either of its ends
+	 * works in O(log(M)) expected time for M decorations
+	 * 
+	 * @param start position of the first character of the span
+	 * @param end   position after the last character of the span
+	 * @param value what the span carries, such as a style
+	 * @return the decoration
+	 * @throws IndexOutOfBoundsException unless 0 <= start <= end <= size()
+	 */
+	public <T> Decoration<T> decorate(int start, int end, T value) throws IndexOutOfBoundsException {
+
+		return this.decorate(start, end, value, Anchor.Gravity.RIGHT, Anchor.Gravity.LEFT);
+
+	} // decorate
+
+	/**
+	 * decorates a span of text whose ends stick to the given sides when text is
+	 * added right at them, like anchors
+	 * works in O(log(M)) expected time for M decorations
+	 * 
+	 * @param start        position of the first character of the span
+	 * @param end          position after the last character of the span
+	 * @param value        what the span carries, such as a style
+	 * @param startGravity side the start sticks to
+	 * @param endGravity   side the end sticks to
+	 * @return the decoration
+	 * @throws IndexOutOfBoundsException unless 0 <= start <= end <= size()
+	 */
+	public <T> Decoration<T> decorate(int start, int end, T value, Anchor.Gravity startGravity,
+			Anchor.Gravity endGravity) throws IndexOutOfBoundsException {
+
+		if (start < 0 || end < start || end > this.size)
+			throw new IndexOutOfBoundsException();
+
+		if (this.decorations == null)
+			this.decorations = new DecorationTree();
+		Decoration<T> decoration = new Decoration<T>(start, end, value, startGravity, endGravity,
+				this.decorations.nextPriority());
+		this.decorations.add(decoration);
+		return decoration;
+
+	} // decorate
+
+	/**
+	 * stops the span from following the text, in O(log(M)) expected time
+	 * 
+	 * @param decoration a decoration created by this tree
+	 * @throws IllegalArgumentException if it is not attached to this tree
+	 */
+	public void removeDecoration(Decoration<?> decoration) {
+
+		if (decoration.tree == null || decoration.tree != this.decorations)
+			throw new IllegalArgumentException("decoration is not attached to this tree");
+
+		this.decorations.remove(decoration);
+
+	} // removeDecoration
+
+	/**
+	 * finds the decorations that share at least one character with a range, such
+	 * as the visible part of the text
+	 * works in O((k + 1) * log(M)) expected time for k of M decorations found
+	 * 
+	 * @param pos    location of the beginning of the range
+	 * @param length length of the range
+	 * @return the decorations, in order of their starts
+	 * @throws IndexOutOfBoundsException unless the whole range is within this tree
+	 */
+	public List<Decoration<?>> decorations(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+
+		List<Decoration<?>> list = new ArrayList<Decoration<?>>();
+		if (this.decorations != null)
+			this.decorations.overlapping(this.decorations.root, pos, pos + length, list);
+		return list;
+
+	} // decorations
+
+	/**
+	 * reports which parts of the tree changed since the previous call, for
+	 * lexers and indexers that only want to redo those parts. added text is
+	 * reported as changed, and so is the point where text was deleted, as an
+	 * empty range. ranges that touch are merged, and earlier ranges are moved
+	 * along by later edits.
+	 * the first call starts tracking and reports the whole tree as changed.
+	 * 
+	 * @return the changed ranges in increasing order, which do not touch, in
+	 *         O(k) time for k ranges
+	 */
+	public List<Range> drainDirtyRanges() {
+
+		if (this.dirty == null) {
+			this.dirty = new DirtyRanges();
+			this.dirty.mark(0, this.size);
+		}
+
+		return this.dirty.drain();
+
+	} // drainDirtyRanges
+
+	/**
+	 * has listener told about every later change to this tree, in batches handed
+	 * over by flushEdits
+	 * works in O(1) amortized time
+	 * 
+	 * @param listener to add
+	 */
+	public void addEditListener(EditListener listener) {
+
+		if (this.events == null)
+			this.events = new EditEvents(!this.separateEdits);
+		this.events.addListener(listener);
+
+	} // addEditListener
+
+	/**
+	 * stops telling listener about changes to this tree. changes not yet flushed
+	 * are dropped once the last listener is gone.
+	 * works in O(L) time for L listeners
+	 * 
+	 * @param listener to remove
+	 */
+	public void removeEditListener(EditListener listener) {
+
+		if (this.events == null)
+			return;
+		this.events.removeListener(listener);
+		if (!this.events.hasListeners())
+			this.events = null;
+
+	} // removeEditListener
+
+	/**
+	 * chooses whether an edit that touches the text of the one before it is
+	 * folded into the same event, so a run of typing or backspacing reaches the
+	 * listeners as one range event. on by default. an event already open is kept
+	 * as it is.
+	 * works in O(1) time
+	 * 
+	 * @param coalescing true to fold touching edits together
+	 */
+	public void setEditCoalescing(boolean coalescing) {
+
+		this.separateEdits = !coalescing;
+		if (this.events != null)
+			this.events.setCoalescing(coalescing);
+
+	} // setEditCoalescing
+
+	/**
+	 * hands every change since the previous flush to the listeners, as one list
+	 * works in O(E) time for E events, plus whatever the listeners do
+	 */
+	public void flushEdits() {
+
+		if (this.events != null)
+			this.events.flush();
+
+	} // flushEdits
+
+	/**
+	 * publishes the changes to this tree, as flushEdits hands them over, to
+	 * subscribers that each queue at most capacity events and catch up from a
+	 * snapshot of the text when they fall further behind
+	 * works in O(1) time
+	 * 
+	 * @param executor runs the delivery of events to subscribers
+	 * @param capacity the most events queued for one subscriber
+	 * @return the publisher, which keeps publishing until it is closed
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public EditPublisher publishEdits(Executor executor, int capacity) throws IllegalArgumentException {
+
+		return new EditPublisher(this, executor, capacity);
+
+	} // publishEdits
+
+	/**
+	 * moves everything that follows positions in this tree past an edit
+	 * 
+	 * @param pos      where the edit happened
+	 * @param removed  number of characters deleted at pos
+	 * @param inserted characters added at pos
+	 */
+	private void edited(int pos, int removed, CharSequence inserted) {
+
+		moveMarkers(this.anchors, pos, removed, inserted.length());
+		moveMarkers(this.decorations, pos, removed, inserted.length());
+		if (this.dirty != null)
+			this.dirty.edited(pos, removed, inserted.length());
+		if (this.events != null)
+			this.events.edited(pos, removed, inserted);
+
+	} // edited
+
+	/**
+	 * edited for length characters added at pos without going through a string,
+	 * which is only made for edit listeners
+	 */
+	private void added(int pos, int length) {
+
+		moveMarkers(this.anchors, pos, 0, length);
+		moveMarkers(this.decorations, pos, 0, length);
+		if (this.dirty != null)
+			this.dirty.edited(pos, 0, length);
+		if (this.events != null)
+			this.events.edited(pos, 0, this.get(pos, length));
+
+	} // added
+
+	private static void moveMarkers(MarkerTree markers, int pos, int removed, int inserted) {
+
+		if (markers == null)
+			return;
+		if (removed > 0)
+			markers.deleted(pos, removed);
+		if (inserted > 0)
+			markers.inserted(pos, inserted);
+
+	} // moveMarkers
+
 	/**
 	 * this method operates in O(length), where length is the parameter provided
 	 * 
@@ -282,11 +1094,542 @@ public class EditTree {
 			throw new IndexOutOfBoundsException();
 
 		StringBuilder stringBuilder = new StringBuilder();
-		this.root.get(pos, pos + length - 1, stringBuilder);
+		this.root().get(pos, pos + length - 1, stringBuilder);
 		return stringBuilder.toString();
 
 	} // get
 
+	/**
+	 * a tree with no newlines still has one line, so the count is always one more
+	 * than the number of newlines
+	 * 
+	 * @return the number of lines in this tree in O(1) time
+	 */
+	public int lineCount() {
+
+		return this.root().lines + 1;
+
+	} // lineCount
+
+	/**
+	 * finds where a line begins, which is right after the newline ending the
+	 * previous line
+	 * 
+	 * @param line zero-based line number
+	 * @return the position of the first character of that line in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if line is negative or not less than
+	 *                                   lineCount()
+	 */
+	public int lineStart(int line) throws IndexOutOfBoundsException {
+
+		if (line < 0 || line >= this.lineCount())
+			throw new IndexOutOfBoundsException();
+
+		if (line == 0)
+			return 0;
+		return this.root().newlinePosition(line - 1) + 1;
+
+	} // lineStart
+
+	/**
+	 * finds the line a position belongs to, a newline is part of the line it ends
+	 * 
+	 * @param pos position in the tree, from 0 to the size of the tree, inclusive
+	 * @return the zero-based line number of pos in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public int lineOf(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size)
+			throw new IndexOutOfBoundsException();
+
+		return this.root().linesBefore(pos);
+
+	} // lineOf
+
+	/**
+	 * makes every node keep its subtree's summary for the aggregate, so that it
+	 * can be folded over ranges and searched in O(log(N)) time
+	 * works in O(N) time
+	 * 
+	 * @param aggregate the aggregate to keep, ignored if already kept
+	 */
+	public void addAggregate(Aggregate<?> aggregate) {
+
+		if (this.hasAggregate(aggregate))
+			return;
+
+		this.aggregates = Aggregates.with(this.aggregates, aggregate);
+		this.root().useAggregates(this.aggregates);
+
+	} // addAggregate
+
+	/**
+	 * stops keeping the aggregate, works in O(N) time
+	 * 
+	 * @param aggregate the aggregate to drop, ignored if not kept
+	 */
+	public void removeAggregate(Aggregate<?> aggregate) {
+
+		if (!this.hasAggregate(aggregate))
+			return;
+
+		this.aggregates = this.aggregates.without(aggregate);
+		this.root().useAggregates(this.aggregates);
+
+	} // removeAggregate
+
+	/**
+	 * @return true iff the aggregate is kept by this tree in O(1) time
+	 */
+	public boolean hasAggregate(Aggregate<?> aggregate) {
+
+		return this.aggregates != null && this.aggregates.indexOf(aggregate) >= 0;
+
+	} // hasAggregate
+
+	/**
+	 * combines the summaries of a range of characters
+	 * 
+	 * @param aggregate an aggregate kept by this tree
+	 * @param pos       location of the beginning of the range
+	 * @param length    length of the range
+	 * @return the summary of the range in O(log(N)) time
+	 * @throws IndexOutOfBoundsException unless the whole range is within this tree
+	 * @throws IllegalArgumentException  if the aggregate is not kept by this tree
+	 */
+	public <T> T fold(Aggregate<T> aggregate, int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+
+		return this.root().fold(aggregate, this.aggregateIndex(aggregate), this.size, pos, pos + length);
+
+	} // fold
+
+	/**
+	 * finds the first position p where the predicate holds for fold(aggregate, 0,
+	 * p + 1). the predicate must stay true for longer prefixes once it holds, like
+	 * "contains at least k newlines".
+	 * 
+	 * @param aggregate an aggregate kept by this tree
+	 * @param predicate test on the summary of a prefix of this tree
+	 * @return that position in O(log(N)) time, or the size of the tree if the
+	 *         predicate never holds
+	 * @throws IllegalArgumentException if the aggregate is not kept by this tree
+	 */
+	public <T> int search(Aggregate<T> aggregate, Predicate<? super T> predicate) {
+
+		return this.root().search(aggregate, this.aggregateIndex(aggregate), predicate);
+
+	} // search
+
+	/**
+	 * the first call makes the tree keep PolynomialHash.INSTANCE, which takes
+	 * O(N) time
+	 * 
+	 * @param pos    location of the beginning of the range
+	 * @param length length of the range
+	 * @return the polynomial hash of the range in O(log(N)) time
+	 * @throws IndexOutOfBoundsException unless the whole range is within this tree
+	 */
+	public long rangeHash(int pos, int length) throws IndexOutOfBoundsException {
+
+		this.addAggregate(PolynomialHash.INSTANCE);
+		return this.fold(PolynomialHash.INSTANCE, pos, length).hash;
+
+	} // rangeHash
+
+	/**
+	 * compares a range of this tree with a range of the same length in other by
+	 * their hashes, which can report false equality with probability of about
+	 * length / 2^61
+	 * 
+	 * @param pos      location of the range in this tree
+	 * @param other    the tree to compare with, may be this tree
+	 * @param otherPos location of the range in other
+	 * @param length   length of both ranges
+	 * @return true iff the ranges hash the same in O(log(N)) time
+	 * @throws IndexOutOfBoundsException unless both ranges are within their trees
+	 */
+	public boolean rangeEquals(int pos, EditTree other, int otherPos, int length)
+			throws IndexOutOfBoundsException {
+
+		return this.rangeEquals(pos, other, otherPos, length, false);
+
+	} // rangeEquals
+
+	/**
+	 * like rangeEquals(pos, other, otherPos, length), but when verify is set a hash
+	 * match is confirmed by comparing the characters, which takes O(length) time
+	 * 
+	 * @param verify true to never report a false equality
+	 * @return true iff the ranges are equal
+	 */
+	public boolean rangeEquals(int pos, EditTree other, int otherPos, int length, boolean verify)
+			throws IndexOutOfBoundsException {
+
+		if (this.rangeHash(pos, length) != other.rangeHash(otherPos, length))
+			return false;
+
+		return !verify || this.get(pos, length).equals(other.get(otherPos, length));
+
+	} // rangeEquals
+
+	/**
+	 * makes every node count the characters of the alphabet in its subtree, so
+	 * count and select work in O(log(N)) time for them. replaces the alphabet of
+	 * an earlier call.
+	 * works in O(N * a) time, where a is the size of the alphabet
+	 * 
+	 * @param alphabet the characters to count
+	 */
+	public void trackCharacterCounts(CharSequence alphabet) {
+
+		if (this.counts != null)
+			this.removeAggregate(this.counts);
+
+		this.counts = new CharacterCounts(alphabet);
+		this.addAggregate(this.counts);
+
+	} // trackCharacterCounts
+
+	/**
+	 * counts the occurrences of ch in a range
+	 * works in O(log(N)) time if ch is tracked by trackCharacterCounts, otherwise
+	 * it finds each occurrence with indexOf
+	 * 
+	 * @param ch     the character to count
+	 * @param pos    location of the beginning of the range
+	 * @param length length of the range
+	 * @return the number of times ch occurs in the range
+	 * @throws IndexOutOfBoundsException unless the whole range is within this tree
+	 */
+	public int count(char ch, int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size)
+			throw new IndexOutOfBoundsException();
+
+		int slot = this.counts == null ? -1 : this.counts.slotOf(ch);
+		if (slot >= 0)
+			return this.fold(this.counts, pos, length)[slot];
+
+		int count = 0;
+		for (int i = this.indexOf(ch, pos); i >= 0 && i < pos + length; i = this.indexOf(ch, i + 1))
+			count++;
+		return count;
+
+	} // count
+
+	/**
+	 * finds the k-th occurrence of ch, counting from 0
+	 * works in O(log(N)) time if ch is tracked by trackCharacterCounts, otherwise
+	 * it finds each earlier occurrence with indexOf
+	 * 
+	 * @param ch the character to look for
+	 * @param k  how many occurrences of ch come before the wanted one
+	 * @return the position of the occurrence, or -1 if ch occurs k times or fewer
+	 * @throws IndexOutOfBoundsException if k is negative
+	 */
+	public int select(char ch, int k) throws IndexOutOfBoundsException {
+
+		if (k < 0)
+			throw new IndexOutOfBoundsException();
+
+		int slot = this.counts == null ? -1 : this.counts.slotOf(ch);
+		if (slot >= 0) {
+			int pos = this.search(this.counts, counts -> counts[slot] > k);
+			return pos == this.size ? -1 : pos;
+		}
+
+		int pos = this.indexOf(ch, 0);
+		for (int i = 0; i < k && pos >= 0; i++)
+			pos = this.indexOf(ch, pos + 1);
+		return pos;
+
+	} // select
+
+	/**
+	 * makes the tree keep an on-screen layout with tabs expanded and lines
+	 * soft-wrapped, so rows and columns can be found in O(log(N)) time
+	 * works in O(N) time
+	 * 
+	 * @param tabSize   columns between tab stops
+	 * @param wrapWidth columns per visual row, or 0 to never wrap
+	 * @return the layout, which stays up to date until it is closed
+	 * @throws IllegalArgumentException if tabSize is not positive
+	 */
+	public VisualLayout visualLayout(int tabSize, int wrapWidth) {
+
+		return new VisualLayout(this, tabSize, wrapWidth);
+
+	} // visualLayout
+
+	/**
+	 * @param pos position in the tree
+	 * @return the code point at pos, like String.codePointAt, in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is negative or too big
+	 */
+	public int codePointAt(int pos) throws IndexOutOfBoundsException {
+
+		char ch = this.get(pos);
+		if (Character.isHighSurrogate(ch) && pos + 1 < this.size) {
+			char low = this.get(pos + 1);
+			if (Character.isLowSurrogate(low))
+				return Character.toCodePoint(ch, low);
+		}
+		return ch;
+
+	} // codePointAt
+
+	/**
+	 * counts code points like String.codePointCount, so an unpaired surrogate
+	 * counts as one code point
+	 * the first call makes the tree keep code point counts, which takes O(N) time
+	 * 
+	 * @param pos    location of the beginning of the range
+	 * @param length length of the range
+	 * @return the number of code points in the range in O(log(N)) time
+	 * @throws IndexOutOfBoundsException unless the whole range is within this tree
+	 */
+	public int codePointCount(int pos, int length) throws IndexOutOfBoundsException {
+
+		this.addAggregate(CodePoints.INSTANCE);
+		return this.fold(CodePoints.INSTANCE, pos, length).count;
+
+	} // codePointCount
+
+	/**
+	 * moves a position by a number of code points, like String.offsetByCodePoints
+	 * the first call makes the tree keep code point counts, which takes O(N) time
+	 * 
+	 * @param pos             position to start from, from 0 to the size of the
+	 *                        tree, inclusive
+	 * @param codePointOffset number of code points to move, negative to move back
+	 * @return the position reached in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is out of range or the tree has too
+	 *                                   few code points to move that far
+	 */
+	public int offsetByCodePoints(int pos, int codePointOffset) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size)
+			throw new IndexOutOfBoundsException();
+		if (codePointOffset == 0)
+			return pos;
+
+		// like String, a low surrogate at pos is one code point on its own when
+		// moving forward, though the prefix counted its high surrogate already
+		boolean splitPair = codePointOffset > 0 && this.codePointStart(pos) != pos;
+		int target = this.codePointCount(0, pos) + codePointOffset - (splitPair ? 1 : 0);
+
+		if (target < 0 || target > this.codePointCount(0, this.size))
+			throw new IndexOutOfBoundsException();
+
+		// the code point numbered target starts where the prefix count passes it
+		return this.search(CodePoints.INSTANCE, prefix -> prefix.count > target);
+
+	} // offsetByCodePoints
+
+	/**
+	 * adds the characters of a code point without splitting a surrogate pair
+	 * already in the tree: a position between the two halves of a pair is moved
+	 * to the front of the pair
+	 * works in O(log(N)) time
+	 * 
+	 * @param codePoint the code point to add
+	 * @param pos       position to add it at, from 0 to the size of the tree,
+	 *                  inclusive
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 * @throws IllegalArgumentException  if codePoint is not a valid code point
+	 */
+	public void addCodePoint(int codePoint, int pos) throws IndexOutOfBoundsException {
+
+		if (pos > this.size || pos < 0)
+			throw new IndexOutOfBoundsException();
+
+		char[] chars = Character.toChars(codePoint);
+		pos = this.codePointStart(pos);
+		for (int i = chars.length - 1; i >= 0; i--)
+			this.add(chars[i], pos);
+
+	} // addCodePoint
+
+	/**
+	 * deletes a whole code point, so both halves of a surrogate pair go together
+	 * works in O(log(N)) time
+	 * 
+	 * @param pos position of either character of the code point
+	 * @return the code point that is deleted
+	 * @throws IndexOutOfBoundsException if pos is negative or too big
+	 */
+	public int deleteCodePoint(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size)
+			throw new IndexOutOfBoundsException();
+
+		pos = this.codePointStart(pos);
+		int codePoint = this.codePointAt(pos);
+		for (int i = 0; i < Character.charCount(codePoint); i++)
+			this.delete(pos);
+		return codePoint;
+
+	} // deleteCodePoint
+
+	/**
+	 * maps a character position to the byte offset of the same place in the UTF-8
+	 * encoding of the tree. a position between the halves of a surrogate pair is
+	 * treated as the front of the pair.
+	 * the first call makes the tree keep UTF-8 lengths, which takes O(N) time
+	 * 
+	 * @param pos position in the tree, from 0 to the size of the tree, inclusive
+	 * @return the number of UTF-8 bytes in front of pos in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public int byteOffsetOf(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size)
+			throw new IndexOutOfBoundsException();
+
+		this.addAggregate(Utf8Length.INSTANCE);
+		return this.fold(Utf8Length.INSTANCE, 0, this.codePointStart(pos)).bytes;
+
+	} // byteOffsetOf
+
+	/**
+	 * maps a byte offset in the UTF-8 encoding of the tree back to the position of
+	 * the character whose encoding holds that byte
+	 * the first call makes the tree keep UTF-8 lengths, which takes O(N) time
+	 * 
+	 * @param byteOffset offset from 0 to the encoded length, inclusive
+	 * @return the position of the character, or of the high surrogate of a pair,
+	 *         in O(log(N)) time. the encoded length maps to the size of the tree.
+	 * @throws IndexOutOfBoundsException if byteOffset is negative or too large
+	 */
+	public int posOfByteOffset(int byteOffset) throws IndexOutOfBoundsException {
+
+		this.addAggregate(Utf8Length.INSTANCE);
+		if (byteOffset < 0 || byteOffset > this.fold(Utf8Length.INSTANCE, 0, this.size).bytes)
+			throw new IndexOutOfBoundsException();
+
+		int pos = this.search(Utf8Length.INSTANCE, prefix -> prefix.bytes > byteOffset);
+		return this.codePointStart(pos);
+
+	} // posOfByteOffset
+
+	/**
+	 * @return pos, or the position of the high surrogate if pos is at the low half
+	 *         of a surrogate pair
+	 */
+	private int codePointStart(int pos) {
+
+		if (pos > 0 && pos < this.size && Character.isLowSurrogate(this.get(pos))
+				&& Character.isHighSurrogate(this.get(pos - 1)))
+			return pos - 1;
+		return pos;
+
+	} // codePointStart
+
+	/**
+	 * finds the first occurrence of ch at or after from, like String.indexOf,
+	 * skipping subtrees that cannot hold ch
+	 * works in O(log(N)) time for characters that are rare in the tree
+	 * 
+	 * @param ch   the character to look for
+	 * @param from position to start looking at, clamped to the tree
+	 * @return the position of the occurrence, or -1 if there is none
+	 */
+	public int indexOf(char ch, int from) {
+
+		return this.root().indexOf(ch, Math.max(from, 0));
+
+	} // indexOf
+
+	/**
+	 * finds the last occurrence of ch at or before from, like
+	 * String.lastIndexOf, skipping subtrees that cannot hold ch
+	 * 
+	 * @param ch   the character to look for
+	 * @param from position to start looking at, clamped to the tree
+	 * @return the position of the occurrence, or -1 if there is none
+	 */
+	public int lastIndexOf(char ch, int from) {
+
+		return this.root().lastIndexOf(ch, Math.min(from, this.size - 1));
+
+	} // lastIndexOf
+
+	/**
+	 * finds the first occurrence of pattern that starts at or after from, like
+	 * String.indexOf, by streaming the characters of the tree
+	 * works in O(log(N) + m + k) time, where m is the length of the pattern and k
+	 * the number of characters passed over
+	 * 
+	 * @param pattern the characters to look for
+	 * @param from    position to start looking at, clamped to the tree
+	 * @return the start of the occurrence, or -1 if there is none
+	 */
+	public int indexOf(CharSequence pattern, int from) {
+
+		from = Math.max(from, 0);
+		if (pattern.length() == 0)
+			return Math.min(from, this.size);
+
+		List<Integer> matches = new PatternSearch(pattern, true).find(this.root(), from, 1);
+		return matches.isEmpty() ? -1 : matches.get(0);
+
+	} // indexOf
+
+	/**
+	 * finds the last occurrence of pattern that starts at or before from, like
+	 * String.lastIndexOf, by streaming the characters of the tree backward
+	 * works in O(log(N) + m + k) time
+	 * 
+	 * @param pattern the characters to look for
+	 * @param from    latest position the occurrence may start at
+	 * @return the start of the occurrence, or -1 if there is none
+	 */
+	public int lastIndexOf(CharSequence pattern, int from) {
+
+		from = Math.min(from, this.size - pattern.length());
+		if (from < 0)
+			return -1;
+		if (pattern.length() == 0)
+			return from;
+
+		// the match has to end by the last character it could cover
+		int last = from + pattern.length() - 1;
+		List<Integer> matches = new PatternSearch(pattern, false).find(this.root(), last, 1);
+		return matches.isEmpty() ? -1 : matches.get(0);
+
+	} // lastIndexOf
+
+	/**
+	 * finds every occurrence of pattern, continuing after the end of each match
+	 * so that no two reported occurrences overlap
+	 * works in O(N + m) time
+	 * 
+	 * @param pattern the characters to look for
+	 * @return the starts of the occurrences, in increasing order
+	 * @throws IllegalArgumentException if pattern is empty
+	 */
+	public List<Integer> findAll(CharSequence pattern) {
+
+		if (pattern.length() == 0)
+			throw new IllegalArgumentException("pattern must not be empty");
+
+		return new PatternSearch(pattern, true).find(this.root(), 0, Integer.MAX_VALUE);
+
+	} // findAll
+
+	private int aggregateIndex(Aggregate<?> aggregate) {
+
+		int index = this.aggregates == null ? -1 : this.aggregates.indexOf(aggregate);
+		if (index < 0)
+			throw new IllegalArgumentException("aggregate is not kept by this tree");
+		return index;
+
+	} // aggregateIndex
+
 	/**
 	 * it will initialize the display field the first time it is called.
 	 */
@@ -319,14 +1662,33 @@ public class EditTree {
 		int spins;
 		boolean balanced; // continue re-balancing until this is true
 		char deletedData; // used for the return in delete
+		Aggregates aggregates; // kept by new nodes
+		double heightFactor; // for addRelaxed, how much taller than balanced a subtree may get
+		double[] sizes; // for addRelaxed, the relaxedSizes of the tree
+		int size; // for addRelaxed, the size of the tree with the new node
+		boolean rebuild; // for addRelaxed, whether a subtree above the new node must be rebuilt
+		int below; // for addRelaxed, how far the new node is below the current one
 
 		public NodeInfo() {
 
 			this.balanced = false;
 			this.spins = 0;
+			this.aggregates = EditTree.this.aggregates;
 
 		} // NodeInfo
 
+		/**
+		 * @return the fewest nodes a subtree height levels tall may have before
+		 *         addRelaxed rebuilds it, 2^(height / heightFactor)
+		 */
+		double sizeFor(int height) {
+
+			if (height < this.sizes.length)
+				return this.sizes[height];
+			return Math.pow(2, height / this.heightFactor);
+
+		} // sizeFor
+
 	} // end NodeInfo
 
 } // end EditTree
\ No newline at end of file
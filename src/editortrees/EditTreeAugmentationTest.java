@@ -0,0 +1,395 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the values each node keeps about its subtree, checked against a
+ * plain StringBuilder after random edits
+ */
+public class EditTreeAugmentationTest {
+
+	private static final String ALPHABET = "ab\n";
+
+	// keeps the text itself, so that folds can be checked against get
+	private static final Aggregate<String> TEXT = new Aggregate<String>() {
+		public String identity() {
+			return "";
+		}
+
+		public String of(char ch) {
+			return String.valueOf(ch);
+		}
+
+		public String combine(String left, String right) {
+			return left + right;
+		}
+	};
+
+	private static final Aggregate<Integer> AS = new Aggregate<Integer>() {
+		public Integer identity() {
+			return 0;
+		}
+
+		public Integer of(char ch) {
+			return ch == 'a' ? 1 : 0;
+		}
+
+		public Integer combine(Integer left, Integer right) {
+			return left + right;
+		}
+	};
+
+	private static int lineStartSlow(String s, int line) {
+		int pos = 0;
+		for (int i = 0; i < line; i++)
+			pos = s.indexOf('\n', pos) + 1;
+		return pos;
+	}
+
+	private static int lineOfSlow(String s, int pos) {
+		int line = 0;
+		for (int i = 0; i < pos; i++)
+			if (s.charAt(i) == '\n')
+				line++;
+		return line;
+	}
+
+	private static void assertLines(EditTree t, String s) {
+		int lines = lineOfSlow(s, s.length()) + 1;
+		assertEquals(lines, t.lineCount());
+		for (int line = 0; line < lines; line++)
+			assertEquals(lineStartSlow(s, line), t.lineStart(line));
+		for (int pos = 0; pos <= s.length(); pos++)
+			assertEquals(lineOfSlow(s, pos), t.lineOf(pos));
+	}
+
+	@Test
+	public void testLinesEmpty() {
+		EditTree t = new EditTree();
+		assertEquals(1, t.lineCount());
+		assertEquals(0, t.lineStart(0));
+		assertEquals(0, t.lineOf(0));
+		try {
+			t.lineStart(1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testLinesFromString() {
+		String s = "first\nsecond\n\nfourth\n";
+		EditTree t = new EditTree(s);
+		assertLines(t, s);
+		assertEquals(5, t.lineCount());
+		assertEquals(13, t.lineStart(2));
+		assertEquals(3, t.lineOf(14));
+	}
+
+	@Test
+	public void testDeleteWithSuccessorKeepsBalance() {
+		// deleting the a at the root replaces it by its successor and shortens
+		// its right subtree, so the tree rotates right at a left child of
+		// balance SAME, whose balance code must change and not the NULL_NODE's
+		EditTree t = new EditTree();
+		t.add('a', 0);
+		t.add('b', 1);
+		t.add('c', 0);
+		t.add('d', 0);
+		assertEquals('a', t.delete(2));
+		assertEquals("dcb", t.toString());
+		assertEquals(true, t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+		assertEquals(Node.Code.SAME, Node.NULL_NODE.balance);
+	}
+
+	@Test
+	public void testLinesRandomEdits() {
+		Random random = new Random(26);
+		EditTree t = new EditTree();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			if (s.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(s.length());
+				assertEquals(s.charAt(pos), t.delete(pos));
+				s.deleteCharAt(pos);
+			} else {
+				char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+				int pos = random.nextInt(s.length() + 1);
+				t.add(ch, pos);
+				s.insert(pos, ch);
+			}
+			if (i % 100 == 0)
+				assertLines(t, s.toString());
+		}
+		assertLines(t, s.toString());
+		assertLines(new EditTree(t), s.toString());
+	}
+
+	@Test
+	public void testFoldRandomEdits() {
+		Random random = new Random(27);
+		EditTree t = new EditTree("abba\nbaab");
+		StringBuilder s = new StringBuilder(t.toString());
+		t.addAggregate(TEXT);
+		for (int i = 0; i < 1000; i++) {
+			if (i == 500)
+				t.addAggregate(AS);
+			if (s.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(s.length());
+				t.delete(pos);
+				s.deleteCharAt(pos);
+			} else {
+				char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+				int pos = random.nextInt(s.length() + 1);
+				t.add(ch, pos);
+				s.insert(pos, ch);
+			}
+			int pos = random.nextInt(s.length() + 1);
+			int length = random.nextInt(s.length() - pos + 1);
+			assertEquals(s.substring(pos, pos + length), t.fold(TEXT, pos, length));
+		}
+		assertEquals(s.toString(), t.fold(TEXT, 0, s.length()));
+		assertEquals(s.toString(), new EditTree(t).fold(TEXT, 0, s.length()));
+
+		// the 10th 'a' found by searching for a prefix containing 10 of them
+		int tenth = -1;
+		for (int i = 0, seen = 0; seen < 10; i++)
+			if (s.charAt(i) == 'a' && ++seen == 10)
+				tenth = i;
+		assertEquals(tenth, t.search(AS, count -> count >= 10));
+		assertEquals(s.length(), t.search(AS, count -> count > s.length()));
+	}
+
+	@Test
+	public void testRemoveAggregate() {
+		EditTree t = new EditTree("abc");
+		t.addAggregate(TEXT);
+		t.addAggregate(AS);
+		t.removeAggregate(TEXT);
+		assertEquals(Integer.valueOf(1), t.fold(AS, 0, 3));
+		try {
+			t.fold(TEXT, 0, 3);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testRangeHash() {
+		Random random = new Random(28);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 300; i++)
+			s.append(ALPHABET.charAt(random.nextInt(2)));
+		EditTree t = new EditTree(s.toString());
+		EditTree copy = new EditTree(s.toString());
+		for (int i = 0; i < 2000; i++) {
+			int length = random.nextInt(6);
+			int pos = random.nextInt(s.length() - length + 1);
+			int otherPos = random.nextInt(s.length() - length + 1);
+			boolean equal = s.substring(pos, pos + length).equals(s.substring(otherPos, otherPos + length));
+			assertEquals(equal, t.rangeEquals(pos, t, otherPos, length));
+			assertEquals(equal, t.rangeEquals(pos, copy, otherPos, length, true));
+		}
+
+		// hashes follow edits
+		t.add('\n', 100);
+		copy.add('\n', 100);
+		assertEquals(copy.rangeHash(50, 100), t.rangeHash(50, 100));
+		t.delete(100);
+		assertEquals(new EditTree(s.toString()).rangeHash(0, s.length()), t.rangeHash(0, s.length()));
+		assertEquals(new EditTree().rangeHash(0, 0), t.rangeHash(7, 0));
+	}
+
+	@Test
+	public void testCountAndSelect() {
+		Random random = new Random(31);
+		EditTree t = new EditTree("a,b\tc,");
+		StringBuilder s = new StringBuilder(t.toString());
+		t.trackCharacterCounts(",\t,");
+		for (int i = 0; i < 1500; i++) {
+			if (s.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(s.length());
+				t.delete(pos);
+				s.deleteCharAt(pos);
+			} else {
+				char ch = "a,\tb".charAt(random.nextInt(4));
+				int pos = random.nextInt(s.length() + 1);
+				t.add(ch, pos);
+				s.insert(pos, ch);
+			}
+			int pos = random.nextInt(s.length() + 1);
+			int length = random.nextInt(s.length() - pos + 1);
+			for (char ch : ",\tab".toCharArray()) {
+				String range = s.substring(pos, pos + length);
+				assertEquals(range.length() - range.replace("" + ch, "").length(), t.count(ch, pos, length));
+			}
+		}
+		for (char ch : ",\ta".toCharArray()) {
+			int k = 0;
+			for (int i = 0; i < s.length(); i++)
+				if (s.charAt(i) == ch)
+					assertEquals(i, t.select(ch, k++));
+			assertEquals(-1, t.select(ch, k));
+		}
+	}
+
+	@Test
+	public void testCodePoints() {
+		Random random = new Random(32);
+		// letters, a pair, and lone surrogates
+		String pieces[] = { "a", "b", "\uD83D\uDE00", "\uD83D", "\uDE00" };
+		EditTree t = new EditTree();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 600; i++) {
+			if (s.length() > 0 && random.nextInt(4) == 0) {
+				int pos = random.nextInt(s.length());
+				t.delete(pos);
+				s.deleteCharAt(pos);
+			} else {
+				String piece = pieces[random.nextInt(pieces.length)];
+				int pos = random.nextInt(s.length() + 1);
+				for (int j = piece.length() - 1; j >= 0; j--)
+					t.add(piece.charAt(j), pos);
+				s.insert(pos, piece);
+			}
+			int pos = random.nextInt(s.length() + 1);
+			int length = random.nextInt(s.length() - pos + 1);
+			assertEquals(s.codePointCount(pos, pos + length), t.codePointCount(pos, length));
+			if (pos < s.length())
+				assertEquals(s.codePointAt(pos), t.codePointAt(pos));
+			int offset = random.nextInt(11) - 5;
+			try {
+				int expected = s.offsetByCodePoints(pos, offset);
+				assertEquals(expected, t.offsetByCodePoints(pos, offset));
+			} catch (IndexOutOfBoundsException e) {
+				try {
+					t.offsetByCodePoints(pos, offset);
+					fail("Did not throw IndexOutOfBoundsException");
+				} catch (IndexOutOfBoundsException expected) {
+					// success
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCodePointEdits() {
+		EditTree t = new EditTree("ab");
+		t.addCodePoint(0x1F600, 1);
+		assertEquals("a\uD83D\uDE00b", t.toString());
+		t.addCodePoint('x', 2); // between the halves, so goes in front of the pair
+		assertEquals("ax\uD83D\uDE00b", t.toString());
+		assertEquals(0x1F600, t.deleteCodePoint(3));
+		assertEquals("axb", t.toString());
+		assertEquals(3, t.codePointCount(0, 3));
+	}
+
+	@Test
+	public void testUtf8Offsets() {
+		Random random = new Random(33);
+		String pieces[] = { "a", "\u00e9", "\u4e2d", "\uD83D\uDE00", "\uD83D", "\uDE00", "\n" };
+		EditTree t = new EditTree();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			String piece = pieces[random.nextInt(pieces.length)];
+			int pos = random.nextInt(s.length() + 1);
+			for (int j = piece.length() - 1; j >= 0; j--)
+				t.add(piece.charAt(j), pos);
+			s.insert(pos, piece);
+		}
+		t.delete(7);
+		s.deleteCharAt(7);
+
+		String text = s.toString();
+		for (int pos = 0; pos <= text.length(); pos++) {
+			int start = pos;
+			if (pos > 0 && pos < text.length() && Character.isLowSurrogate(text.charAt(pos))
+					&& Character.isHighSurrogate(text.charAt(pos - 1)))
+				start--; // inside a pair
+			int offset = text.substring(0, start).getBytes(StandardCharsets.UTF_8).length;
+			assertEquals(offset, t.byteOffsetOf(pos));
+			if (start == pos && pos < text.length()) {
+				int next = pos + Character.charCount(text.codePointAt(pos));
+				int end = text.substring(0, next).getBytes(StandardCharsets.UTF_8).length;
+				for (int b = offset; b < end; b++)
+					assertEquals(pos, t.posOfByteOffset(b));
+			}
+		}
+		int bytes = text.getBytes(StandardCharsets.UTF_8).length;
+		assertEquals(text.length(), t.posOfByteOffset(bytes));
+	}
+
+	// lays out s the slow way, returning the row and column of every position
+	private static int[][] layoutSlow(String s, int tabSize, int wrapWidth) {
+		int[][] positions = new int[s.length() + 1][];
+		int row = 0;
+		int width = 0;
+		for (int pos = 0; pos <= s.length(); pos++) {
+			positions[pos] = new int[] { row + width / wrapWidth, width % wrapWidth };
+			if (pos == s.length())
+				break;
+			char ch = s.charAt(pos);
+			if (ch == '\n') {
+				row += width / wrapWidth + 1;
+				width = 0;
+			} else if (ch == '\t')
+				width = (width / tabSize + 1) * tabSize;
+			else
+				width += VisualWidth.widthOf(ch);
+		}
+		return positions;
+	}
+
+	@Test
+	public void testVisualLayout() {
+		Random random = new Random(34);
+		String pieces = "aaaaab\t\n\u4e2d";
+		EditTree t = new EditTree();
+		VisualLayout layout = t.visualLayout(4, 10);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 800; i++) {
+			if (s.length() > 0 && random.nextInt(4) == 0) {
+				int pos = random.nextInt(s.length());
+				t.delete(pos);
+				s.deleteCharAt(pos);
+			} else {
+				char ch = pieces.charAt(random.nextInt(pieces.length()));
+				int pos = random.nextInt(s.length() + 1);
+				t.add(ch, pos);
+				s.insert(pos, ch);
+			}
+			if (i % 50 != 0)
+				continue;
+			int[][] positions = layoutSlow(s.toString(), 4, 10);
+			int rows = positions[s.length()][0] + 1;
+			assertEquals(rows, layout.rowCount());
+			for (int pos = 0; pos <= s.length(); pos++) {
+				VisualLayout.Position position = layout.positionOf(pos);
+				assertEquals(positions[pos][0], position.row);
+				assertEquals(positions[pos][1], position.column);
+			}
+			for (int row = 0, pos = 0; row < rows; row++) {
+				while (positions[pos][0] < row)
+					pos++;
+				assertEquals(pos, layout.offsetOfRow(row));
+			}
+		}
+		layout.close();
+		try {
+			layout.rowCount();
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+}
@@ -0,0 +1,558 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the operations on whole ranges of a tree
+ */
+public class EditTreeRangeTest {
+
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			text.append(random.nextInt(8) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+		return text.toString();
+	}
+
+	private static void assertWellFormed(EditTree t, String expected) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertEquals(t.slowHeight(), t.fastHeight());
+		assertEquals(expected.split("\n", -1).length, t.lineCount());
+	}
+
+	@Test
+	public void testBulkAdd() {
+		Random random = new Random(43);
+		EditTree t = new EditTree();
+		StringBuilder model = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			String s = randomText(random, random.nextInt(i % 50 == 0 ? 1000 : 10));
+			int pos = random.nextInt(model.length() + 1);
+			t.add(s, pos);
+			model.insert(pos, s);
+			assertWellFormed(t, model.toString());
+		}
+		t.add('x', 3);
+		model.insert(3, 'x');
+		assertWellFormed(t, model.toString());
+	}
+
+	@Test
+	public void testBulkDelete() {
+		Random random = new Random(430);
+		String text = randomText(random, 20000);
+		EditTree t = new EditTree(text);
+		StringBuilder model = new StringBuilder(text);
+		while (model.length() > 0) {
+			int pos = random.nextInt(model.length());
+			int length = random.nextInt(Math.min(model.length() - pos, 300) + 1);
+			assertEquals(model.substring(pos, pos + length), t.delete(pos, length));
+			model.delete(pos, pos + length);
+			assertWellFormed(t, model.toString());
+		}
+	}
+
+	@Test
+	public void testBulkEditsKeepTracking() {
+		EditTree t = new EditTree("0123456789");
+		t.trackCharacterCounts("x");
+		Anchor anchor = t.createAnchor(8, Anchor.Gravity.LEFT);
+		t.drainDirtyRanges();
+		t.add("xxx", 2);
+		assertEquals(11, anchor.position());
+		assertEquals(3, t.count('x', 0, t.size()));
+		assertEquals(t.rangeHash(2, 3), new EditTree("xxx").rangeHash(0, 3));
+		assertEquals("456", t.delete(7, 3));
+		assertEquals(8, anchor.position());
+		assertEquals("[[2, 5), [7, 7)]", t.drainDirtyRanges().toString());
+		assertEquals(t.rangeHash(0, t.size()), new EditTree(t.toString()).rangeHash(0, t.size()));
+	}
+
+	@Test
+	public void testRelaxedBalance() {
+		Random random = new Random(47);
+		for (int burst = 0; burst < 3; burst++) {
+			EditTree strict = new EditTree();
+			EditTree relaxed = new EditTree();
+			relaxed.relaxBalance(2);
+			StringBuilder model = new StringBuilder();
+			int cursor = 0;
+			for (int i = 0; i < 20000; i++) {
+				// runs of adds at one place, like pasting, with jumps between them
+				if (random.nextInt(100) == 0)
+					cursor = random.nextInt(model.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				strict.add(ch, cursor);
+				relaxed.add(ch, cursor);
+				model.insert(cursor, ch);
+				if (burst == 0)
+					cursor++;
+				int n = model.length();
+				assertTrue(relaxed.slowHeight() <= 2 * Math.log(n + 1) / Math.log(2) + 1);
+			}
+			assertEquals(model.toString(), relaxed.toString());
+			assertEquals(model.charAt(1234), relaxed.get(1234));
+			relaxed.restoreBalance();
+			assertWellFormed(relaxed, model.toString());
+			assertTrue(relaxed.totalRotationCount() < strict.totalRotationCount());
+		}
+	}
+
+	@Test
+	public void testRelaxedAddBursts() {
+		Random random = new Random(4700);
+		EditTree strict = new EditTree();
+		EditTree relaxed = new EditTree();
+		relaxed.relaxBalance(2);
+		Anchor end = relaxed.createAnchor(0, Anchor.Gravity.RIGHT);
+		StringBuilder model = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			char ch = (char) ('a' + random.nextInt(26));
+			strict.add(ch);
+			relaxed.add(ch);
+			model.append(ch);
+		}
+		assertEquals(model.length(), end.position());
+		assertEquals(model.charAt(777), relaxed.get(777));
+		// the burst is linked in as one balanced subtree, not node by node
+		assertTrue(100 * relaxed.totalRotationCount() < strict.totalRotationCount());
+
+		for (int burst = 0; burst < 50; burst++) {
+			int cursor = random.nextInt(model.length() + 1);
+			for (int i = 0; i < 200; i++) {
+				char ch = (char) ('a' + random.nextInt(26));
+				strict.add(ch, cursor);
+				relaxed.add(ch, cursor);
+				model.insert(cursor, ch);
+				if (burst % 2 == 0)
+					cursor++;
+			}
+			int length = Math.min(10, model.length() - cursor);
+			assertEquals(model.substring(cursor, cursor + length), relaxed.get(cursor, length));
+		}
+		assertTrue(100 * relaxed.totalRotationCount() < strict.totalRotationCount());
+		relaxed.restoreBalance();
+		assertWellFormed(relaxed, model.toString());
+	}
+
+	@Test
+	public void testRelaxedBalanceRepairsBeforeStrictEdits() {
+		EditTree t = new EditTree();
+		t.relaxBalance(1.5);
+		StringBuilder model = new StringBuilder();
+		Random random = new Random(470);
+		for (int i = 0; i < 5000; i++) {
+			if (model.length() > 0 && random.nextInt(4) == 0) {
+				int pos = random.nextInt(model.length());
+				assertEquals(model.charAt(pos), t.delete(pos));
+				model.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(model.length() + 1);
+				char ch = random.nextInt(10) == 0 ? '\n' : 'x';
+				t.add(ch, pos);
+				model.insert(pos, ch);
+			}
+		}
+		t.add("end", t.size());
+		model.append("end");
+		assertWellFormed(t, model.toString());
+		try {
+			t.relaxBalance(1);
+			fail("relaxed balance below the AVL bound");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void reverse(StringBuilder model, int pos, int length) {
+		for (int i = pos, j = pos + length - 1; i < j; i++, j--) {
+			char ch = model.charAt(i);
+			model.setCharAt(i, model.charAt(j));
+			model.setCharAt(j, ch);
+		}
+	}
+
+	/**
+	 * reverses, transforms and edits t and a model the same way, checking reads
+	 * that go through the pending tags
+	 */
+	private static void checkTags(EditTree t, Random random, int steps) {
+		StringBuilder model = new StringBuilder(t.toString());
+		CharTransform[] ops = { CharTransform.UPPER_CASE, CharTransform.LOWER_CASE, CharTransform.remap("abc", "cab") };
+		for (int i = 0; i < steps; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			int length = random.nextInt(model.length() - pos + 1);
+			switch (random.nextInt(6)) {
+			case 0:
+				t.reverse(pos, length);
+				reverse(model, pos, length);
+				break;
+			case 1:
+				CharTransform op = ops[random.nextInt(ops.length)];
+				t.transform(pos, length, op);
+				for (int j = pos; j < pos + length; j++)
+					model.setCharAt(j, op.apply(model.charAt(j)));
+				break;
+			case 2:
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				model.insert(pos, ch);
+				break;
+			case 3:
+				if (pos < model.length()) {
+					assertEquals(model.charAt(pos), t.delete(pos));
+					model.deleteCharAt(pos);
+				}
+				break;
+			case 4:
+				assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+				if (pos < model.length())
+					assertEquals(model.charAt(pos), t.get(pos));
+				break;
+			default:
+				char target = (char) ('a' + random.nextInt(26));
+				assertEquals(model.indexOf(String.valueOf(target), pos), t.indexOf(target, pos));
+				int line = random.nextInt(t.lineCount());
+				int start = 0;
+				for (int k = 0; k < line; k++)
+					start = model.indexOf("\n", start) + 1;
+				assertEquals(start, t.lineStart(line));
+			}
+		}
+		assertWellFormed(t, model.toString());
+	}
+
+	@Test
+	public void testLazyReverseAndTransform() {
+		Random random = new Random(48);
+		checkTags(new EditTree(randomText(random, 100000)), random, 2000);
+		checkTags(new EditTree(randomText(random, 300)), random, 2000);
+	}
+
+	@Test
+	public void testReverseAndTransformWithAggregates() {
+		Random random = new Random(480);
+		EditTree t = new EditTree(randomText(random, 40000));
+		t.trackCharacterCounts("abc\n");
+		checkTags(t, random, 300); // counts ignore order, so reverse stays lazy
+		String text = t.toString();
+		assertEquals(text.length() - text.replace("a", "").length(), t.count('a', 0, t.size()));
+		t.rangeHash(0, 1); // an aggregate that cares about order
+		checkTags(t, random, 300);
+		assertEquals(new EditTree(t.toString()).rangeHash(0, t.size()), t.rangeHash(0, t.size()));
+	}
+
+	@Test
+	public void testReverseKeepsOrderedAggregates() {
+		Random random = new Random(4801);
+		StringBuilder model = new StringBuilder();
+		String units = "ab\u00e9\u20ac\ud83d\ude00\ud83d\ude00\n";
+		for (int i = 0; i < 3000; i++)
+			model.append(units.charAt(random.nextInt(units.length())));
+		EditTree t = new EditTree(model.toString());
+		t.rangeHash(0, 1);
+		t.codePointCount(0, 1);
+		t.byteOffsetOf(0);
+		for (int i = 0; i < 300; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			int length = random.nextInt(model.length() - pos + 1);
+			t.reverse(pos, length);
+			reverse(model, pos, length);
+			if (i % 30 == 0) {
+				String text = model.toString();
+				EditTree fresh = new EditTree(text);
+				pos = random.nextInt(text.length() + 1);
+				length = random.nextInt(text.length() - pos + 1);
+				assertEquals(fresh.rangeHash(pos, length), t.rangeHash(pos, length));
+				assertEquals(text.codePointCount(pos, pos + length), t.codePointCount(pos, length));
+				assertEquals(fresh.byteOffsetOf(pos), t.byteOffsetOf(pos));
+			}
+		}
+		assertWellFormed(t, model.toString());
+	}
+
+	@Test
+	public void testReverseAndTransformStayLazyWithAggregates() {
+		Random random = new Random(4802);
+		EditTree t = new EditTree(randomText(random, 1 << 18));
+		String text = t.toString();
+		t.rangeHash(0, 1);
+		t.codePointCount(0, 1);
+		t.byteOffsetOf(0);
+		long start = System.nanoTime();
+		for (int i = 0; i < 200; i++)
+			t.reverse(1, t.size() - 2);
+		// the kept hashes, code point counts and UTF-8 lengths reverse with the tag
+		assertTrue(System.nanoTime() - start < 1_000_000_000L);
+		assertEquals(new EditTree(text).rangeHash(0, text.length()), t.rangeHash(0, t.size()));
+
+		EditTree u = new EditTree(text);
+		u.codePointCount(0, 1);
+		u.byteOffsetOf(0);
+		CharTransform op = CharTransform.remap("abc", "cab");
+		start = System.nanoTime();
+		for (int i = 0; i < 90; i++)
+			u.transform(1, u.size() - 2, op);
+		// op keeps every code point count and UTF-8 length, so the range is tagged
+		assertTrue(System.nanoTime() - start < 3_000_000_000L);
+		assertEquals(text.length(), u.codePointCount(0, u.size()));
+		assertEquals(text, u.toString()); // op cycles a, b and c, and 90 is a multiple of 3
+
+		// a hash changes with any op, so the range is rewritten, but stays right
+		t.transform(0, t.size(), op);
+		assertEquals(new EditTree(t.toString()).rangeHash(0, t.size()), t.rangeHash(0, t.size()));
+	}
+
+	@Test
+	public void testLazyTransformIsCached() {
+		CharTransform op = CharTransform.remap("ab", "ba");
+		assertTrue(LazyTransform.of(op) == LazyTransform.of(op));
+		assertTrue(LazyTransform.of(ch -> ch == '\n' ? 'x' : ch) == null);
+	}
+
+	@Test
+	public void testMove() {
+		Random random = new Random(49);
+		EditTree t = new EditTree(randomText(random, 5000));
+		t.trackCharacterCounts("ab");
+		StringBuilder model = new StringBuilder(t.toString());
+		for (int i = 0; i < 500; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			int length = random.nextInt(model.length() - pos + 1);
+			int to = random.nextInt(model.length() - length + 1);
+			if (i % 50 == 0)
+				t.reverse(pos, length);
+			t.move(pos, length, to);
+			String moved = model.substring(pos, pos + length);
+			if (i % 50 == 0)
+				moved = new StringBuilder(moved).reverse().toString();
+			model.delete(pos, pos + length);
+			model.insert(to, moved);
+			assertWellFormed(t, model.toString());
+		}
+		String text = model.toString();
+		assertEquals(text.length() - text.replace("b", "").length(), t.count('b', 0, t.size()));
+		assertEquals(new EditTree(text).rangeHash(0, t.size()), t.rangeHash(0, t.size()));
+	}
+
+	@Test
+	public void testMoveKeepsTracking() {
+		EditTree t = new EditTree("0123456789");
+		Anchor before = t.createAnchor(1, Anchor.Gravity.LEFT);
+		Anchor left = t.createAnchor(8, Anchor.Gravity.LEFT);
+		Anchor right = t.createAnchor(8, Anchor.Gravity.RIGHT);
+		List<EditEvent> events = new ArrayList<EditEvent>();
+		t.setEditCoalescing(false);
+		t.addEditListener(events::addAll);
+		t.drainDirtyRanges();
+		t.move(2, 3, 5);
+		t.flushEdits();
+		assertEquals("0156723489", t.toString());
+		assertEquals(1, before.position());
+		assertEquals(5, left.position()); // the moved text lands at both anchors
+		assertEquals(8, right.position());
+		assertEquals(Arrays.asList(new EditEvent(2, 3, ""), new EditEvent(5, 0, "234")), events);
+		assertEquals("[[2, 2), [5, 8)]", t.drainDirtyRanges().toString());
+		try {
+			t.move(8, 2, 9);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * edits t and a model the same way, so a tree sharing nodes with t can be
+	 * checked to stay as it was
+	 */
+	private static void edit(EditTree t, StringBuilder model, Random random, int steps) {
+		for (int i = 0; i < steps; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			int length = random.nextInt(Math.min(model.length() - pos, 100) + 1);
+			switch (random.nextInt(4)) {
+			case 0:
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				model.insert(pos, ch);
+				break;
+			case 1:
+				assertEquals(model.substring(pos, pos + length), t.delete(pos, length));
+				model.delete(pos, pos + length);
+				break;
+			case 2:
+				t.reverse(pos, length);
+				reverse(model, pos, length);
+				break;
+			default:
+				int to = random.nextInt(model.length() - length + 1);
+				t.move(pos, length, to);
+				String moved = model.substring(pos, pos + length);
+				model.delete(pos, pos + length);
+				model.insert(to, moved);
+			}
+		}
+	}
+
+	@Test
+	public void testCopyRange() {
+		Random random = new Random(50);
+		EditTree t = new EditTree(randomText(random, 3000));
+		t.trackCharacterCounts("ab\n");
+		StringBuilder model = new StringBuilder(t.toString());
+		EditTree[] copies = new EditTree[20];
+		StringBuilder[] models = new StringBuilder[copies.length];
+		for (int i = 0; i < copies.length; i++) {
+			// copies of copies share nodes too
+			EditTree source = i % 2 == 0 ? t : copies[i - 1];
+			StringBuilder sourceModel = i % 2 == 0 ? model : models[i - 1];
+			int pos = random.nextInt(sourceModel.length() + 1);
+			int length = random.nextInt(sourceModel.length() - pos + 1);
+			copies[i] = source.copyRange(pos, length);
+			models[i] = new StringBuilder(sourceModel.substring(pos, pos + length));
+			edit(t, model, random, 50);
+			edit(copies[i], models[i], random, 50);
+		}
+		assertWellFormed(t, model.toString());
+		for (int i = 0; i < copies.length; i++) {
+			assertWellFormed(copies[i], models[i].toString());
+			String text = models[i].toString();
+			assertEquals(text.length() - text.replace("a", "").length(), copies[i].count('a', 0, copies[i].size()));
+		}
+		assertEquals(0, t.copyRange(t.size(), 0).size());
+		try {
+			t.copyRange(1, t.size());
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testInsertTree() {
+		Random random = new Random(500);
+		EditTree t = new EditTree(randomText(random, 2000));
+		StringBuilder model = new StringBuilder(t.toString());
+		for (int i = 0; i < 100; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			int length = random.nextInt(Math.min(model.length() - pos, 500) + 1);
+			EditTree clip = t.copyRange(pos, length);
+			String text = model.substring(pos, pos + length);
+			int to = random.nextInt(model.length() + 1);
+			t.insertTree(clip, to);
+			model.insert(to, text);
+			assertEquals(model.length(), t.size());
+			if (i % 40 == 0) {
+				assertWellFormed(t, model.toString());
+				t.insertTree(t, 0); // a tree can be added to itself
+				model.insert(0, model.toString());
+			}
+			edit(t, model, random, 5);
+			edit(clip, new StringBuilder(text), random, 5);
+		}
+		assertWellFormed(t, model.toString());
+
+		// trees with other aggregates have their characters added one by one
+		EditTree counted = new EditTree("abc\nab");
+		counted.trackCharacterCounts("b");
+		counted.insertTree(t, 3);
+		model.insert(0, "abc");
+		model.append("\nab");
+		assertWellFormed(counted, model.toString());
+		String text = model.toString();
+		assertEquals(text.length() - text.replace("b", "").length(), counted.count('b', 0, counted.size()));
+	}
+
+	@Test
+	public void testInsertTreeWithEqualAggregates() {
+		Random random = new Random(501);
+		EditTree clip = new EditTree(randomText(random, 5000));
+		EditTree t = new EditTree(randomText(random, 1000));
+		for (EditTree tree : new EditTree[] { clip, t }) {
+			tree.trackCharacterCounts("ab\n");
+			tree.rangeHash(0, 1);
+		}
+		String clipText = clip.toString();
+		StringBuilder model = new StringBuilder(t.toString());
+		for (int i = 0; i < 50; i++) {
+			int pos = random.nextInt(model.length() + 1);
+			t.insertTree(clip, pos);
+			model.insert(pos, clipText);
+			edit(t, model, random, 5);
+		}
+		// the trees registered equal aggregates apart, but still share subtrees
+		assertTrue(clip.root.left.shared && clip.root.right.shared);
+		assertEquals(clipText, clip.toString());
+		String text = model.toString();
+		assertEquals(text.length() - text.replace("b", "").length(), t.count('b', 0, t.size()));
+		assertEquals(new EditTree(text).rangeHash(0, text.length()), t.rangeHash(0, t.size()));
+		assertWellFormed(t, text);
+	}
+
+	@Test
+	public void testInsertTreeKeepsTracking() {
+		EditTree t = new EditTree("0123456789");
+		Anchor anchor = t.createAnchor(8, Anchor.Gravity.LEFT);
+		List<EditEvent> events = new ArrayList<EditEvent>();
+		t.addEditListener(events::addAll);
+		t.drainDirtyRanges();
+		t.insertTree(t.copyRange(7, 2), 2);
+		t.flushEdits();
+		assertEquals("017823456789", t.toString());
+		assertEquals(10, anchor.position());
+		assertEquals(Arrays.asList(new EditEvent(2, 0, "78")), events);
+		assertEquals("[[2, 4)]", t.drainDirtyRanges().toString());
+	}
+
+	@Test
+	public void testCopyHugeRange() {
+		EditTree t = new EditTree(randomText(new Random(5000), 1 << 20));
+		String text = t.toString();
+		long start = System.nanoTime();
+		EditTree document = new EditTree();
+		for (int i = 0; i < 1000; i++)
+			document.insertTree(t.copyRange(i, t.size() - 2 * i), document.size());
+		// each copy and insert takes O(log(N)) time and space, not O(N)
+		assertTrue(System.nanoTime() - start < 1_000_000_000L);
+		assertEquals(1000 * text.length() - 999 * 1000, document.size());
+		t.transform(0, t.size(), CharTransform.UPPER_CASE);
+		assertEquals(text.toUpperCase(), t.toString());
+		int offset = 0;
+		for (int i = 0; i < 1000; i++) {
+			int length = text.length() - 2 * i;
+			if (i % 300 == 0)
+				assertEquals(text.substring(i, i + length), document.get(offset, length));
+			offset += length;
+		}
+	}
+
+	@Test
+	public void testReverseHugeRange() {
+		Random random = new Random(4800);
+		EditTree t = new EditTree(randomText(random, 1 << 20));
+		String text = t.toString();
+		long start = System.nanoTime();
+		for (int i = 0; i < 200; i++) {
+			t.reverse(1, t.size() - 2);
+			t.transform(0, t.size(), i % 2 == 0 ? CharTransform.UPPER_CASE : CharTransform.LOWER_CASE);
+		}
+		// each pair of calls takes O(log(N)) time, well below rewriting the range
+		assertTrue(System.nanoTime() - start < 10_000_000_000L);
+		assertEquals(text.toLowerCase(), t.toString());
+		Anchor anchor = t.createAnchor(5, Anchor.Gravity.LEFT);
+		t.transform(0, 10, CharTransform.UPPER_CASE);
+		assertEquals(5, anchor.position());
+	}
+
+}
@@ -0,0 +1,116 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for searching the tree without building its string, checked against
+ * the same searches on a String
+ */
+public class EditTreeSearchTest {
+
+	private static String randomText(Random random, String alphabet, int length) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return s.toString();
+	}
+
+	private static List<Integer> findAllSlow(String s, String pattern) {
+		List<Integer> matches = new ArrayList<Integer>();
+		for (int i = s.indexOf(pattern); i >= 0; i = s.indexOf(pattern, i + pattern.length()))
+			matches.add(i);
+		return matches;
+	}
+
+	@Test
+	public void testIndexOfSimple() {
+		EditTree t = new EditTree("abracadabra");
+		assertEquals(0, t.indexOf("abra", 0));
+		assertEquals(7, t.indexOf("abra", 1));
+		assertEquals(-1, t.indexOf("abra", 8));
+		assertEquals(3, t.indexOf("", 3));
+		assertEquals(11, t.indexOf("", 20));
+		assertEquals(7, t.lastIndexOf("abra", 20));
+		assertEquals(0, t.lastIndexOf("abra", 6));
+		assertEquals(-1, t.lastIndexOf("abra", -1));
+		assertEquals(11, t.lastIndexOf("", 20));
+		assertEquals(-1, new EditTree("ab").lastIndexOf("abc", 5));
+	}
+
+	@Test
+	public void testSearchRandom() {
+		Random random = new Random(29);
+		String s = randomText(random, "ab", 500);
+		EditTree t = new EditTree(s);
+		for (int i = 0; i < 500; i++) {
+			String pattern = randomText(random, "ab", 1 + random.nextInt(6));
+			int from = random.nextInt(s.length() + 4) - 2;
+			assertEquals(s.indexOf(pattern, from), t.indexOf(pattern, from));
+			assertEquals(s.lastIndexOf(pattern, from), t.lastIndexOf(pattern, from));
+		}
+		assertEquals(findAllSlow(s, "aa"), t.findAll("aa"));
+		assertEquals(findAllSlow(s, "abab"), t.findAll("abab"));
+	}
+
+	@Test
+	public void testSearchAfterEdits() {
+		EditTree t = new EditTree();
+		String s = "";
+		for (int i = 0; i < 50; i++) {
+			t.add('x');
+			t.add('y');
+			s += "xy";
+		}
+		t.delete(49);
+		s = s.substring(0, 49) + s.substring(50);
+		assertEquals(s.indexOf("xx"), t.indexOf("xx", 0));
+		assertEquals(findAllSlow(s, "xy"), t.findAll("xy"));
+	}
+
+	@Test
+	public void testCharSearchRandom() {
+		Random random = new Random(30);
+		StringBuilder s = new StringBuilder(randomText(random, "abcdefgh", 2000));
+		EditTree t = new EditTree(s.toString());
+		for (int i = 0; i < 20; i++) {
+			int pos = random.nextInt(s.length());
+			char ch = (char) ('A' + random.nextInt(26));
+			t.add(ch, pos);
+			s.insert(pos, ch);
+		}
+		for (int i = 0; i < 20; i++) {
+			int pos = random.nextInt(s.length());
+			t.delete(pos);
+			s.deleteCharAt(pos);
+		}
+		String text = s.toString();
+		for (int i = 0; i < 1000; i++) {
+			char ch = (char) ('A' + random.nextInt(26));
+			int from = random.nextInt(s.length() + 4) - 2;
+			assertEquals(text.indexOf(ch, from), t.indexOf(ch, from));
+			assertEquals(text.lastIndexOf(ch, from), t.lastIndexOf(ch, from));
+		}
+	}
+
+	@Test
+	public void testSparsePatternSearch() {
+		Random random = new Random(31);
+		StringBuilder s = new StringBuilder(randomText(random, "abcdefgh", 3000));
+		s.insert(100, "XYZ");
+		s.insert(2000, "XYZ");
+		s.insert(2500, "XY");
+		EditTree t = new EditTree(s.toString());
+		assertEquals(findAllSlow(s.toString(), "XYZ"), t.findAll("XYZ"));
+		assertEquals(findAllSlow(s.toString(), "XY"), t.findAll("XY"));
+		assertEquals(s.lastIndexOf("XYZ"), t.lastIndexOf("XYZ", s.length()));
+		assertEquals(s.indexOf("XYZ", 101), t.indexOf("XYZ", 101));
+		assertEquals(-1, t.indexOf("XQ", 0));
+	}
+
+}
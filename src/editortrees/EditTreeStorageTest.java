@@ -0,0 +1,268 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for saving and loading trees
+ */
+public class EditTreeStorageTest {
+
+	private static byte[] snapshot(EditTree t) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeSnapshot(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static EditTree load(byte[] bytes) throws IOException {
+		return EditTree.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		Random random = new Random(40);
+		for (int size : new int[] { 0, 1, 2, 7, 1000, 100000 }) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < size; i++)
+				text.append((char) random.nextInt(Character.MAX_VALUE + 1));
+			EditTree t = new EditTree(text.toString());
+			byte[] bytes = snapshot(t);
+			assertEquals(12 + 2 * size + 8, bytes.length);
+			EditTree loaded = load(bytes);
+			assertEquals(t.toString(), loaded.toString());
+			assertEquals(t.toDebugString(), loaded.toDebugString());
+			assertEquals(t.size(), loaded.size());
+			assertTrue(loaded.balanceCodesAreCorrect());
+		}
+	}
+
+	@Test
+	public void testSnapshotAtChunkBoundaries() throws IOException {
+		// the checksum must fit behind characters that nearly fill the buffer
+		for (int size : new int[] { 32764, 32765, 32766, 32767, 32768, 32769, 65533, 65535, 65536, 98303 }) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < size; i++)
+				text.append((char) ('a' + i % 26));
+			EditTree t = new EditTree(text.toString());
+			byte[] bytes = snapshot(t);
+			assertEquals(12 + 2 * size + 8, bytes.length);
+			assertEquals(t.toString(), load(bytes).toString());
+		}
+	}
+
+	@Test
+	public void testSnapshotOfEditedTree() throws IOException {
+		EditTree t = new EditTree();
+		Random random = new Random(400);
+		for (int i = 0; i < 5000; i++)
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+		EditTree loaded = load(snapshot(t));
+		assertEquals(t.toString(), loaded.toString());
+		assertEquals(new EditTree(t.toString()).toDebugString(), loaded.toDebugString());
+		loaded.add('!', 2500);
+		assertEquals(t.get(0, 2500) + "!" + t.get(2500, 2500), loaded.toString());
+	}
+
+	@Test
+	public void testSnapshotFile() throws IOException {
+		Path path = Files.createTempFile("edittree", ".snapshot");
+		try {
+			EditTree t = new EditTree("line one\nline two\n");
+			t.writeSnapshot(path);
+			EditTree loaded = EditTree.readSnapshot(path);
+			assertEquals(t.toString(), loaded.toString());
+			assertEquals(3, loaded.lineCount());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testCorruptSnapshot() throws IOException {
+		byte[] bytes = snapshot(new EditTree("snapshot"));
+		expectFailure(Arrays.copyOf(bytes, bytes.length - 1));
+		byte[] flipped = bytes.clone();
+		flipped[14] ^= 1;
+		expectFailure(flipped);
+		byte[] version = bytes.clone();
+		version[7] = 2;
+		expectFailure(version);
+		byte[] magic = bytes.clone();
+		magic[0] = 0;
+		expectFailure(magic);
+	}
+
+	@Test
+	public void testMappedEditTree() throws IOException {
+		Path path = Files.createTempFile("edittree", ".log");
+		try {
+			Random random = new Random(41);
+			byte[] bytes = new byte[100000];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = (byte) (i % 80 == 79 ? '\n' : 32 + random.nextInt(224));
+			Files.write(path, bytes);
+			String text = new String(bytes, StandardCharsets.ISO_8859_1);
+
+			MappedEditTree t = MappedEditTree.open(path, StandardCharsets.ISO_8859_1);
+			assertEquals(text.length(), t.size());
+			assertEquals(text.charAt(12345), t.get(12345));
+			assertEquals(text.substring(500, 900), t.get(500, 400));
+
+			StringBuilder model = new StringBuilder(text);
+			int cursor = 0;
+			for (int i = 0; i < 20000; i++) {
+				if (random.nextInt(20) == 0)
+					cursor = random.nextInt(model.length() + 1);
+				if (model.length() > 0 && random.nextInt(3) == 0) {
+					int pos = Math.min(cursor, model.length() - 1);
+					assertEquals(model.charAt(pos), t.delete(pos));
+					model.deleteCharAt(pos);
+				} else {
+					char ch = (char) ('a' + random.nextInt(26));
+					t.add(ch, cursor);
+					model.insert(cursor++, ch);
+				}
+				cursor = Math.min(cursor, model.length());
+				assertEquals(model.length(), t.size());
+				if (i % 1000 == 0) {
+					int pos = random.nextInt(model.length());
+					int length = random.nextInt(model.length() - pos + 1);
+					assertEquals(model.substring(pos, pos + length), t.get(pos, length));
+				}
+			}
+			assertEquals(model.toString(), t.toString());
+			t.add('!');
+			assertEquals('!', t.get(t.size() - 1));
+
+			// the file itself is never written
+			assertTrue(Arrays.equals(bytes, Files.readAllBytes(path)));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testMappedEditTreeOfEmptyFile() throws IOException {
+		Path path = Files.createTempFile("edittree", ".log");
+		try {
+			MappedEditTree t = MappedEditTree.open(path);
+			assertEquals(0, t.size());
+			t.add('a');
+			t.add('b', 0);
+			assertEquals("ba", t.toString());
+			assertEquals('b', t.delete(0));
+			assertEquals('a', t.delete(0));
+			assertEquals("", t.toString());
+			try {
+				t.get(0);
+				fail("got a character from an empty tree");
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testMappedEditTreeCharsets() throws IOException {
+		Path path = Files.createTempFile("edittree", ".log");
+		try {
+			Files.write(path, "caf\u00e9 \u20ac5\n".getBytes(StandardCharsets.UTF_8));
+			try {
+				MappedEditTree.open(path, StandardCharsets.UTF_16);
+				fail("opened a file in a charset of more than one byte per character");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertEquals("caf\u00e9 \u20ac5\n", MappedEditTree.open(path, StandardCharsets.UTF_8).toString());
+
+			// as US-ASCII, the bytes of the accents are no characters
+			MappedEditTree t = MappedEditTree.open(path);
+			assertEquals("caf", t.get(0, 3));
+			try {
+				t.get(3);
+				fail("read a byte that is not US-ASCII");
+			} catch (UncheckedIOException e) {
+				// expected
+			}
+
+			Files.write(path, "caf\u00e9 \u20ac5\n".getBytes("windows-1252"));
+			t = MappedEditTree.open(path, Charset.forName("windows-1252"));
+			assertEquals("caf\u00e9 \u20ac5\n", t.toString());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testMappedEditTreeUtf8() throws IOException {
+		Random random = new Random(41);
+		String units = "ab\n\u00e9\u20ac\ud83d\ude00";
+		StringBuilder model = new StringBuilder();
+		while (model.length() < 1023)
+			model.append('a');
+		model.append("\ud83d\ude00"); // a pair around character 1024
+		while (model.length() < 20000) {
+			int i = random.nextInt(units.length() - 1);
+			model.append(units, i, Character.isHighSurrogate(units.charAt(i)) ? i + 2 : i + 1);
+		}
+		Path path = Files.createTempFile("edittree", ".log");
+		try {
+			Files.write(path, model.toString().getBytes(StandardCharsets.UTF_8));
+			MappedEditTree t = MappedEditTree.open(path, StandardCharsets.UTF_8);
+			assertEquals(model.toString(), t.toString());
+			assertEquals('\ude00', t.get(1024));
+			assertEquals('\ud83d', t.get(1023));
+			for (int i = 0; i < 2000; i++) {
+				int pos = random.nextInt(model.length());
+				assertEquals(model.charAt(pos), t.get(pos));
+				if (i % 3 == 0) {
+					char ch = (char) ('a' + random.nextInt(26));
+					t.add(ch, pos);
+					model.insert(pos, ch);
+				} else if (i % 3 == 1) {
+					assertEquals(model.charAt(pos), t.delete(pos));
+					model.deleteCharAt(pos);
+				}
+			}
+			assertEquals(model.toString(), t.toString());
+
+			// a file that is not UTF-8 is refused when it is opened, not when read
+			Files.write(path, new byte[] { 'o', 'k', (byte) 0xc3, '(' });
+			try {
+				MappedEditTree.open(path, StandardCharsets.UTF_8);
+				fail("opened a file that is not UTF-8");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	private static void expectFailure(byte[] bytes) {
+		try {
+			load(bytes);
+			fail("read a corrupt snapshot");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
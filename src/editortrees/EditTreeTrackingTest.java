@@ -0,0 +1,425 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import editortrees.Anchor.Gravity;
+
+/**
+ * Tests for the things that follow the text of a tree as it is edited
+ */
+public class EditTreeTrackingTest {
+
+	@Test
+	public void testAnchorGravity() {
+		EditTree t = new EditTree("abcd");
+		Anchor left = t.createAnchor(2, Gravity.LEFT);
+		Anchor right = t.createAnchor(2, Gravity.RIGHT);
+		Anchor end = t.createAnchor(4, Gravity.LEFT);
+		t.add('x', 2);
+		assertEquals(2, left.position());
+		assertEquals(3, right.position());
+		assertEquals(5, end.position());
+		t.delete(0);
+		assertEquals(1, left.position());
+		assertEquals(2, right.position());
+		t.delete(1); // the added x
+		assertEquals(1, right.position());
+		t.add('y', 1); // left gravity now in front of right gravity again
+		assertEquals(1, left.position());
+		assertEquals(2, right.position());
+		t.add('z');
+		assertEquals(4, end.position());
+		t.removeAnchor(left);
+		assertFalse(left.isAttached());
+		try {
+			left.position();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testAnchorsRandomEdits() {
+		Random random = new Random(35);
+		EditTree t = new EditTree("0123456789");
+		List<Anchor> anchors = new ArrayList<Anchor>();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 3000; i++) {
+			int op = random.nextInt(10);
+			if (op < 2) {
+				int pos = random.nextInt(t.size() + 1);
+				anchors.add(t.createAnchor(pos, random.nextBoolean() ? Gravity.LEFT : Gravity.RIGHT));
+				expected.add(pos);
+			} else if (op < 3 && !anchors.isEmpty()) {
+				int index = random.nextInt(anchors.size());
+				t.removeAnchor(anchors.remove(index));
+				expected.remove(index);
+			} else if (op < 6 && t.size() > 0) {
+				int pos = random.nextInt(t.size());
+				t.delete(pos);
+				for (int j = 0; j < expected.size(); j++)
+					if (expected.get(j) > pos)
+						expected.set(j, expected.get(j) - 1);
+			} else {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('a', pos);
+				for (int j = 0; j < expected.size(); j++)
+					if (expected.get(j) > pos || (expected.get(j) == pos && anchors.get(j).gravity() == Gravity.RIGHT))
+						expected.set(j, expected.get(j) + 1);
+			}
+			if (i % 100 == 0)
+				for (int j = 0; j < anchors.size(); j++)
+					assertEquals(expected.get(j).intValue(), anchors.get(j).position());
+		}
+		for (int j = 0; j < anchors.size(); j++)
+			assertEquals(expected.get(j).intValue(), anchors.get(j).position());
+	}
+
+	@Test
+	public void testDecorationsFollowEdits() {
+		EditTree t = new EditTree("let x = 10;");
+		Decoration<String> keyword = t.decorate(0, 3, "keyword");
+		Decoration<String> number = t.decorate(8, 10, "number");
+		t.add(' ', 0); // at the start, so outside the span
+		assertEquals(1, keyword.start());
+		assertEquals(4, keyword.end());
+		t.add('0', 11); // at the end, so outside the span
+		t.add('0', 10); // inside
+		assertEquals(9, number.start());
+		assertEquals(12, number.end());
+		assertEquals(" let x = 1000;", t.toString());
+		assertEquals("[keyword]", values(t.decorations(0, 5)).toString());
+		assertEquals("[keyword, number]", values(t.decorations(3, 7)).toString());
+		assertEquals("[]", values(t.decorations(4, 5)).toString());
+		for (int i = 0; i < 4; i++)
+			t.delete(2);
+		assertEquals(" l = 1000;", t.toString());
+		assertEquals(1, keyword.start());
+		assertEquals(2, keyword.end());
+		t.removeDecoration(keyword);
+		assertEquals("[number]", values(t.decorations(0, t.size())).toString());
+	}
+
+	private static List<Object> values(List<Decoration<?>> decorations) {
+		List<Object> values = new ArrayList<Object>();
+		for (Decoration<?> decoration : decorations)
+			values.add(decoration.value());
+		return values;
+	}
+
+	@Test
+	public void testDecorationsRandomEdits() {
+		Random random = new Random(36);
+		EditTree t = new EditTree("0123456789abcdefghij");
+		List<Decoration<Integer>> decorations = new ArrayList<Decoration<Integer>>();
+		List<int[]> expected = new ArrayList<int[]>();
+		for (int i = 0; i < 3000; i++) {
+			int op = random.nextInt(10);
+			if (op < 2) {
+				int start = random.nextInt(t.size() + 1);
+				int end = start + random.nextInt(t.size() - start + 1);
+				Gravity startGravity = random.nextBoolean() ? Gravity.LEFT : Gravity.RIGHT;
+				Gravity endGravity = random.nextBoolean() ? Gravity.LEFT : Gravity.RIGHT;
+				decorations.add(t.decorate(start, end, i, startGravity, endGravity));
+				expected.add(new int[] { start, end });
+			} else if (op < 3 && !decorations.isEmpty()) {
+				int index = random.nextInt(decorations.size());
+				t.removeDecoration(decorations.remove(index));
+				expected.remove(index);
+			} else if (op < 6 && t.size() > 0) {
+				int pos = random.nextInt(t.size());
+				t.delete(pos);
+				for (int[] span : expected)
+					for (int k = 0; k < 2; k++)
+						if (span[k] > pos)
+							span[k]--;
+			} else {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('a', pos);
+				for (int j = 0; j < expected.size(); j++) {
+					Decoration<Integer> decoration = decorations.get(j);
+					int[] span = expected.get(j);
+					Gravity[] gravities = { decoration.gravity, decoration.endGravity };
+					for (int k = 0; k < 2; k++)
+						if (span[k] > pos || (span[k] == pos && gravities[k] == Gravity.RIGHT))
+							span[k]++;
+					span[1] = Math.max(span[0], span[1]); // an empty span never turns around
+				}
+			}
+			if (i % 50 == 0) {
+				int from = random.nextInt(t.size() + 1);
+				int to = from + random.nextInt(t.size() - from + 1);
+				List<Object> found = new ArrayList<Object>();
+				for (Decoration<?> decoration : t.decorations(from, to - from))
+					found.add(decoration.value());
+				int count = 0;
+				for (int j = 0; j < expected.size(); j++) {
+					int[] span = expected.get(j);
+					assertEquals(span[0], decorations.get(j).start());
+					assertEquals(span[1], decorations.get(j).end());
+					if (span[0] < to && span[1] > from) {
+						assertTrue(found.contains(decorations.get(j).value()));
+						count++;
+					}
+				}
+				assertEquals(count, found.size());
+			}
+		}
+	}
+
+	@Test
+	public void testDirtyRanges() {
+		EditTree t = new EditTree("hello world");
+		assertEquals("[[0, 11)]", t.drainDirtyRanges().toString());
+		assertEquals("[]", t.drainDirtyRanges().toString());
+
+		// typing coalesces into one range
+		t.add('!', 5);
+		t.add('!', 6);
+		t.add('!', 7);
+		// a range further on, moved along by an edit in front of it
+		t.delete(12);
+		t.add('x', 0);
+		assertEquals("[[0, 1), [6, 9), [13, 13)]", t.drainDirtyRanges().toString());
+
+		// deleting back over added text keeps one range
+		t.add('a', 3);
+		t.add('b', 4);
+		t.delete(4);
+		t.delete(3);
+		t.delete(2);
+		assertEquals("[[2, 2)]", t.drainDirtyRanges().toString());
+	}
+
+	@Test
+	public void testDirtyRangesRandomEdits() {
+		Random random = new Random(37);
+		EditTree t = new EditTree("0123456789abcdefghij");
+		t.drainDirtyRanges();
+		for (int round = 0; round < 50; round++) {
+			String before = t.toString();
+			for (int i = 0; i < 10; i++) {
+				if (t.size() > 0 && random.nextBoolean())
+					t.delete(random.nextInt(t.size()));
+				else
+					t.add((char) ('A' + random.nextInt(26)), random.nextInt(t.size() + 1));
+			}
+			// outside the dirty ranges the text is the old text, in order
+			String after = t.toString();
+			StringBuilder kept = new StringBuilder();
+			int last = 0;
+			int previousEnd = -2;
+			for (Range range : t.drainDirtyRanges()) {
+				assertTrue(range.start > previousEnd);
+				previousEnd = range.end;
+				kept.append(after, last, range.start);
+				last = range.end;
+			}
+			kept.append(after.substring(last));
+			assertTrue(isSubsequence(kept.toString(), before));
+		}
+	}
+
+	@Test
+	public void testEditEventsCoalesce() {
+		EditTree t = new EditTree("hello");
+		List<List<EditEvent>> batches = new ArrayList<List<EditEvent>>();
+		t.addEditListener(batches::add);
+		t.add(' ');
+		t.add('w');
+		t.add('x');
+		t.delete(7); // backspace over the x
+		t.add('o');
+		t.delete(4); // backspace before the typed text
+		t.delete(0);
+		t.add('J', 0);
+		assertTrue(batches.isEmpty());
+		t.flushEdits();
+		assertEquals(1, batches.size());
+		List<EditEvent> events = batches.get(0);
+		assertEquals(2, events.size());
+		assertEquals(new EditEvent(4, 1, " wo"), events.get(0));
+		assertEquals(new EditEvent(0, 1, "J"), events.get(1));
+		t.flushEdits();
+		assertEquals(1, batches.size());
+
+		t.setEditCoalescing(false);
+		t.add('!');
+		t.add('!');
+		t.flushEdits();
+		assertEquals(2, batches.get(1).size());
+		assertEquals(new EditEvent(7, 0, "!"), batches.get(1).get(0));
+		assertEquals(new EditEvent(8, 0, "!"), batches.get(1).get(1));
+	}
+
+	@Test
+	public void testEditEventsReplay() {
+		Random random = new Random(38);
+		for (boolean coalescing : new boolean[] { true, false }) {
+			EditTree t = new EditTree("the quick brown fox");
+			StringBuilder copy = new StringBuilder(t.toString());
+			t.setEditCoalescing(coalescing);
+			t.addEditListener(events -> {
+				for (EditEvent event : events)
+					copy.replace(event.position, event.position + event.removedLength, event.insertedText);
+			});
+			int cursor = 0;
+			for (int i = 0; i < 2000; i++) {
+				if (random.nextInt(10) == 0)
+					cursor = random.nextInt(t.size() + 1);
+				if (t.size() > 0 && random.nextInt(3) == 0) {
+					if (random.nextBoolean() && cursor > 0)
+						cursor--; // backspace
+					t.delete(Math.min(cursor, t.size() - 1));
+					cursor = Math.min(cursor, t.size());
+				} else
+					t.add((char) ('a' + random.nextInt(26)), cursor++);
+				if (random.nextInt(50) == 0) {
+					t.flushEdits();
+					assertEquals(t.toString(), copy.toString());
+				}
+			}
+			t.flushEdits();
+			assertEquals(t.toString(), copy.toString());
+		}
+	}
+
+	/**
+	 * keeps a copy of a tree from published events, asking for more on demand
+	 */
+	private static class Copy implements Flow.Subscriber<EditEvent> {
+		StringBuilder text = new StringBuilder();
+		Flow.Subscription subscription;
+		int events = 0;
+		boolean complete = false;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(EditEvent event) {
+			this.events++;
+			this.text.replace(event.position, event.position + event.removedLength, event.insertedText);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			fail(throwable.toString());
+		}
+
+		@Override
+		public void onComplete() {
+			this.complete = true;
+		}
+	}
+
+	@Test
+	public void testPublishEdits() {
+		EditTree t = new EditTree("abc");
+		EditPublisher publisher = t.publishEdits(Runnable::run, 4);
+		Copy fast = new Copy();
+		Copy slow = new Copy();
+		publisher.subscribe(fast);
+		publisher.subscribe(slow);
+		fast.subscription.request(Long.MAX_VALUE);
+		assertEquals("abc", fast.text.toString());
+		assertEquals("", slow.text.toString());
+
+		Random random = new Random(39);
+		for (int i = 0; i < 100; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+			t.flushEdits();
+			assertEquals(t.toString(), fast.text.toString());
+		}
+		assertEquals(101, fast.events);
+
+		// the slow subscriber never held more than a snapshot and a few events
+		slow.subscription.request(1);
+		assertEquals(1, slow.events);
+		slow.subscription.request(10);
+		assertTrue(slow.events <= 5);
+		assertEquals(t.toString(), slow.text.toString());
+
+		t.delete(0);
+		t.delete(0);
+		t.add('x', 5);
+		publisher.close();
+		assertEquals(t.toString(), slow.text.toString());
+		assertEquals(t.toString(), fast.text.toString());
+		assertTrue(fast.complete);
+		assertTrue(slow.complete);
+	}
+
+	@Test
+	public void testPublishEditsOnExecutor() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		EditTree t = new EditTree();
+		EditPublisher publisher = t.publishEdits(executor, 16);
+		CountDownLatch done = new CountDownLatch(3);
+		List<Copy> copies = new ArrayList<Copy>();
+		for (int batch : new int[] { 1, 7, 1000 }) {
+			Copy copy = new Copy() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					super.onSubscribe(subscription);
+					subscription.request(batch);
+				}
+
+				@Override
+				public void onNext(EditEvent event) {
+					super.onNext(event);
+					if (this.events % batch == 0)
+						this.subscription.request(batch);
+				}
+
+				@Override
+				public void onComplete() {
+					super.onComplete();
+					done.countDown();
+				}
+			};
+			copies.add(copy);
+			publisher.subscribe(copy);
+		}
+		Random random = new Random(390);
+		for (int i = 0; i < 5000; i++) {
+			if (t.size() > 0 && random.nextInt(3) == 0)
+				t.delete(random.nextInt(t.size()));
+			else
+				t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+			if (random.nextInt(5) == 0)
+				t.flushEdits();
+		}
+		publisher.close();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		for (Copy copy : copies)
+			assertEquals(t.toString(), copy.text.toString());
+	}
+
+	private static boolean isSubsequence(String part, String whole) {
+		int i = 0;
+		for (int j = 0; i < part.length() && j < whole.length(); j++)
+			if (part.charAt(i) == whole.charAt(j))
+				i++;
+		return i == part.length();
+	}
+
+}
@@ -0,0 +1,115 @@
+package editortrees;
+
+/**
+ * characters in an array with a gap at the last edit, so edits near one
+ * another only move the characters between them
+ */
+class GapBuffer {
+
+	private char[] chars;
+	private int gapStart; // the gap is chars[gapStart, gapEnd)
+	private int gapEnd;
+
+	GapBuffer(int capacity) {
+
+		this.chars = new char[capacity];
+		this.gapStart = 0;
+		this.gapEnd = capacity;
+
+	} // GapBuffer
+
+	int length() {
+
+		return this.chars.length - (this.gapEnd - this.gapStart);
+
+	} // length
+
+	/**
+	 * works in O(1) time
+	 */
+	char charAt(int index) {
+
+		return index < this.gapStart ? this.chars[index] : this.chars[index + this.gapEnd - this.gapStart];
+
+	} // charAt
+
+	/**
+	 * works in O(d) amortized time for an index d away from the last edit
+	 */
+	void insert(int index, char ch) {
+
+		if (this.gapStart == this.gapEnd)
+			this.grow();
+		this.moveGap(index);
+		this.chars[this.gapStart++] = ch;
+
+	} // insert
+
+	/**
+	 * works in O(d) time for an index d away from the last edit
+	 */
+	void delete(int index) {
+
+		this.moveGap(index);
+		this.gapEnd++;
+
+	} // delete
+
+	void clear() {
+
+		this.gapStart = 0;
+		this.gapEnd = this.chars.length;
+
+	} // clear
+
+	/**
+	 * appends the characters from index from up to index to, in O(to - from) time
+	 */
+	void appendTo(StringBuilder builder, int from, int to) {
+
+		if (from < this.gapStart)
+			builder.append(this.chars, from, Math.min(to, this.gapStart) - from);
+		if (to > this.gapStart) {
+			int start = Math.max(from, this.gapStart) + this.gapEnd - this.gapStart;
+			builder.append(this.chars, start, to + this.gapEnd - this.gapStart - start);
+		}
+
+	} // appendTo
+
+	@Override
+	public String toString() {
+
+		StringBuilder builder = new StringBuilder(this.length());
+		this.appendTo(builder, 0, this.length());
+		return builder.toString();
+
+	} // toString
+
+	private void moveGap(int index) {
+
+		if (index < this.gapStart) {
+			int count = this.gapStart - index;
+			System.arraycopy(this.chars, index, this.chars, this.gapEnd - count, count);
+			this.gapStart -= count;
+			this.gapEnd -= count;
+		} else if (index > this.gapStart) {
+			int count = index - this.gapStart;
+			System.arraycopy(this.chars, this.gapEnd, this.chars, this.gapStart, count);
+			this.gapStart += count;
+			this.gapEnd += count;
+		}
+
+	} // moveGap
+
+	private void grow() {
+
+		char[] larger = new char[Math.max(2 * this.chars.length, 16)];
+		int after = this.chars.length - this.gapEnd;
+		System.arraycopy(this.chars, 0, larger, 0, this.gapStart);
+		System.arraycopy(this.chars, this.gapEnd, larger, larger.length - after, after);
+		this.gapEnd = larger.length - after;
+		this.chars = larger;
+
+	} // grow
+
+} // end GapBuffer
@@ -0,0 +1,118 @@
+package editortrees;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * a CharTransform waiting to be pushed down a subtree, with what it does to
+ * the masks of the subtrees it reaches
+ *
+ * it is kept as lookup tables applied in order, so composing tags is cheap,
+ * and once too many are composed they are merged into one table, so
+ * characters reached by many tags are still transformed in O(1) time
+ */
+class LazyTransform {
+
+	private static final int MAX_TABLES = 64;
+	private static final Map<CharTransform, LazyTransform> CACHE = new WeakHashMap<>(); // results of of
+
+	private final char[][] tables; // what each character becomes, applied in order
+	final long[] image; // bit b holds the mask bits of what characters of bit b become
+
+	private LazyTransform(char[][] tables, long[] image) {
+
+		this.tables = tables;
+		this.image = image;
+
+	} // LazyTransform
+
+	/**
+	 * tries every character, keeping what each becomes, which works in O(1)
+	 * time for any tree. the result is remembered for as long as transform is
+	 * in use, so a transform applied again costs nothing.
+	 * 
+	 * @return the lazy form of transform, or null if it turns some newline into
+	 *         another character or some other character into a newline, since
+	 *         line counts could then only be fixed eagerly
+	 */
+	static LazyTransform of(CharTransform transform) {
+
+		synchronized (CACHE) {
+			if (CACHE.containsKey(transform))
+				return CACHE.get(transform);
+			LazyTransform lazy = tabulate(transform);
+			CACHE.put(transform, lazy);
+			return lazy;
+		}
+
+	} // of
+
+	/**
+	 * @return the lazy form of transform, or null, as for of
+	 */
+	private static LazyTransform tabulate(CharTransform transform) {
+
+		long[] image = new long[64];
+		char[] table = new char[Character.MAX_VALUE + 1];
+		for (int ch = Character.MIN_VALUE; ch <= Character.MAX_VALUE; ch++) {
+			char result = transform.apply((char) ch);
+			if ((ch == '\n') != (result == '\n'))
+				return null;
+			image[ch & 63] |= Node.maskOf(result);
+			table[ch] = result;
+		}
+		return new LazyTransform(new char[][] { table }, image);
+
+	} // tabulate
+
+	/**
+	 * @return what ch becomes
+	 */
+	char apply(char ch) {
+
+		for (char[] table : this.tables)
+			ch = table[ch];
+		return ch;
+
+	} // apply
+
+	/**
+	 * @return a mask that holds the mask bit of every character that the
+	 *         characters of mask become
+	 */
+	long apply(long mask) {
+
+		long result = 0;
+		for (; mask != 0; mask &= mask - 1)
+			result |= this.image[Long.numberOfTrailingZeros(mask)];
+		return result;
+
+	} // apply
+
+	/**
+	 * @return this transform followed by next
+	 */
+	LazyTransform then(LazyTransform next) {
+
+		long[] image = new long[64];
+		for (int bit = 0; bit < 64; bit++)
+			image[bit] = next.apply(this.image[bit]);
+
+		int count = this.tables.length + next.tables.length;
+		char[][] tables = new char[count][];
+		System.arraycopy(this.tables, 0, tables, 0, this.tables.length);
+		System.arraycopy(next.tables, 0, tables, this.tables.length, next.tables.length);
+		if (count <= MAX_TABLES)
+			return new LazyTransform(tables, image);
+
+		char[] merged = tables[0].clone();
+		for (int i = 1; i < count; i++) {
+			char[] table = tables[i];
+			for (int ch = 0; ch < merged.length; ch++)
+				merged[ch] = table[merged[ch]];
+		}
+		return new LazyTransform(new char[][] { merged }, image);
+
+	} // then
+
+} // end LazyTransform
@@ -0,0 +1,145 @@
+package editortrees;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.MalformedInputException;
+
+/**
+ * the bytes of a file under 2 GB, mapped into memory and read in a charset
+ * with one byte per character, so the character at each position comes from
+ * the byte at that position
+ * mapping does not read the file, so this works in O(1) time for any such
+ * size, and the operating system pages in only the parts that are read
+ */
+class MappedChars implements CharSequence {
+
+	private static final int REGION_BITS = 30; // a mapping must be under 2 GB
+	private static final int REGION_MASK = (1 << REGION_BITS) - 1;
+	private static final char INVALID = '\uffff'; // in the table for bytes that are no character
+
+	private final MappedByteBuffer[] regions;
+	private final int length;
+	private final Charset charset;
+	private final char[] table; // the character of each byte value
+
+	/**
+	 * maps the whole file the channel reads, to be read in charset
+	 * 
+	 * @throws IOException              if the file is too long to index with an
+	 *                                  int, or mapping fails
+	 * @throws IllegalArgumentException if charset takes more than one byte for
+	 *                                  some characters
+	 */
+	MappedChars(FileChannel channel, Charset charset) throws IOException, IllegalArgumentException {
+
+		this.charset = charset;
+		this.table = decoding(charset);
+
+		this.regions = map(channel);
+		this.length = (int) channel.size();
+
+	} // MappedChars
+
+	/**
+	 * maps the whole file the channel reads, in O(1) time
+	 * 
+	 * @return the mapped regions, each but the last of 2^REGION_BITS bytes
+	 * @throws IOException if the file is too long to index with an int, or
+	 *                     mapping fails
+	 */
+	static MappedByteBuffer[] map(FileChannel channel) throws IOException {
+
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("file too large to edit: " + size + " bytes");
+
+		MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_MASK) >>> REGION_BITS)];
+		for (int i = 0; i < regions.length; i++) {
+			long start = (long) i << REGION_BITS;
+			regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << REGION_BITS));
+		}
+		return regions;
+
+	} // map
+
+	/**
+	 * @return the byte at index of the regions map gave, from 0 to 255
+	 */
+	static int byteAt(MappedByteBuffer[] regions, int index) {
+
+		return regions[index >>> REGION_BITS].get(index & REGION_MASK) & 0xff;
+
+	} // byteAt
+
+	/**
+	 * @return the character of each of the 256 byte values in charset, or
+	 *         INVALID for those that are not one
+	 * @throws IllegalArgumentException if charset is not one byte per character
+	 */
+	private static char[] decoding(Charset charset) throws IllegalArgumentException {
+
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1)
+			throw new IllegalArgumentException("not UTF-8 or a charset of one byte per character: " + charset.name());
+
+		char[] table = new char[256];
+		CharsetDecoder decoder = charset.newDecoder();
+		for (int b = 0; b < table.length; b++) {
+			CharBuffer out = CharBuffer.allocate(2);
+			decoder.reset();
+			CoderResult result = decoder.decode(ByteBuffer.wrap(new byte[] { (byte) b }), out, true);
+			if (!result.isError())
+				result = decoder.flush(out);
+			table[b] = result.isError() || out.position() != 1 ? INVALID : out.get(0);
+		}
+		return table;
+
+	} // decoding
+
+	@Override
+	public int length() {
+
+		return this.length;
+
+	} // length
+
+	/**
+	 * @throws UncheckedIOException if the byte at index is not a character of
+	 *                              the charset, rather than give the wrong one
+	 */
+	@Override
+	public char charAt(int index) {
+
+		if (index < 0 || index >= this.length)
+			throw new IndexOutOfBoundsException();
+		char ch = this.table[byteAt(this.regions, index)];
+		if (ch == INVALID)
+			throw new UncheckedIOException("byte " + index + " is not " + this.charset.name(),
+					new MalformedInputException(1));
+		return ch;
+
+	} // charAt
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+
+		StringBuilder builder = new StringBuilder(end - start);
+		builder.append(this, start, end);
+		return builder;
+
+	} // subSequence
+
+	@Override
+	public String toString() {
+
+		return this.subSequence(0, this.length).toString();
+
+	} // toString
+
+} // end MappedChars
@@ -0,0 +1,190 @@
+package editortrees;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * an editable view of a file that is opened without reading it
+ * 
+ * the file is mapped into memory and read in UTF-8 or in a charset of one byte
+ * per character, like US-ASCII or ISO-8859-1. the text is a sequence of pieces:
+ * the parts of the file that have not been changed are slices of the mapping,
+ * and characters that are added go into small EditTrees between them. so
+ * memory grows with the edits, not with the file. files can be under 2 GB, the
+ * most an int can index.
+ * 
+ * in a charset of one byte per character, opening works in O(1) time for any
+ * such file, and bytes are only checked as they are read: reading one that is
+ * not a character of the charset throws an UncheckedIOException. a UTF-8 file
+ * is read once when it is opened, to check it and to note where every so many
+ * characters start, so opening takes O(N) time and reads take O(1) time.
+ * 
+ * the file must not change while it is open
+ */
+public class MappedEditTree implements TextBuffer {
+
+	private final PieceTree pieces;
+
+	private MappedEditTree(CharSequence text) {
+
+		this.pieces = new PieceTree();
+		if (text.length() > 0)
+			this.pieces.insert(0, new Piece.Slice(text, 0, text.length()));
+
+	} // MappedEditTree
+
+	/**
+	 * opens the file at path for editing as US-ASCII, works in O(1) time. a
+	 * file that may hold other characters, like most UTF-8 logs, should be
+	 * opened with its charset instead.
+	 * 
+	 * @see #open(Path, Charset)
+	 */
+	public static MappedEditTree open(Path path) throws IOException {
+
+		return open(path, StandardCharsets.US_ASCII);
+
+	} // open
+
+	/**
+	 * opens the file at path for editing, works in O(1) time, or O(N) time
+	 * for UTF-8
+	 * 
+	 * @param path    the file
+	 * @param charset how its bytes are read, UTF-8 or one byte per character
+	 * @return the text of the file, which editing never writes back
+	 * @throws IOException              if the file cannot be mapped, is 2 GB or
+	 *                                  more, or is not UTF-8 when read as UTF-8
+	 * @throws IllegalArgumentException if charset is not UTF-8 and has
+	 *                                  characters of more than one byte, like
+	 *                                  UTF-16
+	 */
+	public static MappedEditTree open(Path path, Charset charset) throws IOException, IllegalArgumentException {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (charset.equals(StandardCharsets.UTF_8))
+				return new MappedEditTree(new MappedUtf8Chars(channel));
+			return new MappedEditTree(new MappedChars(channel, charset));
+		}
+
+	} // open
+
+	/**
+	 * @return the number of characters in O(1) time
+	 */
+	public int size() {
+
+		return this.pieces.length();
+
+	} // size
+
+	/**
+	 * adds ch to the end, works in O(log(P) + log(N)) expected time for P pieces
+	 */
+	public void add(char ch) {
+
+		this.add(ch, this.size());
+
+	} // add
+
+	/**
+	 * adds ch at pos, next to a piece added before if there is one there, or in
+	 * a new piece otherwise
+	 * works in O(log(P) + log(N)) expected time for P pieces
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size())
+			throw new IndexOutOfBoundsException();
+
+		if (pos > 0) {
+			PieceTree.Location before = this.pieces.locate(pos - 1);
+			if (before.piece instanceof Piece.Tree) {
+				((Piece.Tree) before.piece).tree.add(ch, before.offset + 1);
+				this.pieces.grown(before.piece, pos - 1, 1);
+				return;
+			}
+		}
+		if (pos < this.size()) {
+			PieceTree.Location after = this.pieces.locate(pos);
+			if (after.piece instanceof Piece.Tree) {
+				((Piece.Tree) after.piece).tree.add(ch, after.offset);
+				this.pieces.grown(after.piece, pos, 1);
+				return;
+			}
+		}
+		this.pieces.insert(pos, new Piece.Tree(new EditTree(ch)));
+
+	} // add
+
+	/**
+	 * deletes the character at pos, works in O(log(P) + log(N)) expected time for
+	 * P pieces
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+
+		PieceTree.Location location = this.pieces.locate(pos);
+		if (location.piece instanceof Piece.Tree && location.piece.length() > 1) {
+			char ch = ((Piece.Tree) location.piece).tree.delete(location.offset);
+			this.pieces.grown(location.piece, pos, -1);
+			return ch;
+		}
+		char ch = location.piece.charAt(location.offset);
+		this.pieces.delete(pos, 1);
+		return ch;
+
+	} // delete
+
+	/**
+	 * @return the character at pos in O(log(P) + log(N)) expected time
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+		return this.pieces.charAt(pos);
+
+	} // get
+
+	/**
+	 * @return the length characters from pos in O(log(P) + K * log(N) + length)
+	 *         expected time for K pieces in the range
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size())
+			throw new IndexOutOfBoundsException();
+		StringBuilder builder = new StringBuilder(length);
+		this.pieces.appendTo(builder, pos, length);
+		return builder.toString();
+
+	} // get
+
+	/**
+	 * @return all the characters in O(N) time
+	 */
+	@Override
+	public String toString() {
+
+		return this.get(0, this.size());
+
+	} // toString
+
+} // end MappedEditTree
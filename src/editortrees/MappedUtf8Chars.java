@@ -0,0 +1,182 @@
+package editortrees;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+/**
+ * the bytes of a file under 2 GB, mapped into memory and read as UTF-8, where
+ * a character takes one to three bytes and a supplementary code point takes
+ * four bytes for its two surrogates
+ *
+ * opening reads the file once, checking that it is UTF-8 and keeping where
+ * every CHECKPOINT-th character starts, so a read decodes from the checkpoint
+ * before it. where the last read was is kept too, so reading in order decodes
+ * each character once.
+ */
+class MappedUtf8Chars implements CharSequence {
+
+	private static final int CHECKPOINT_BITS = 10;
+	private static final int CHECKPOINT = 1 << CHECKPOINT_BITS; // characters between checkpoints
+
+	private final MappedByteBuffer[] regions;
+	private final int length;
+	private final int[] offsets; // where character c * CHECKPOINT starts, or ~ where its pair does
+
+	private int index; // the character read last, or its pair's first half
+	private int offset; // the first byte of its code point
+
+	/**
+	 * maps the whole file the channel reads and checks it, in O(N) time
+	 *
+	 * @throws IOException if the file is too long to index with an int, mapping
+	 *                     fails, or the file is not UTF-8
+	 */
+	MappedUtf8Chars(FileChannel channel) throws IOException {
+
+		this.regions = MappedChars.map(channel);
+		int size = (int) channel.size();
+
+		int[] offsets = new int[16];
+		int count = 0; // characters before offset
+		for (int offset = 0; offset < size;) {
+			int bytes = this.sequenceLength(offset, size);
+			if (bytes == 0)
+				throw new IOException("byte " + offset + " is not UTF-8", new MalformedInputException(1));
+			int chars = bytes == 4 ? 2 : 1;
+			for (int at = count; at < count + chars; at++) {
+				if ((at & (CHECKPOINT - 1)) != 0)
+					continue;
+				if (at >>> CHECKPOINT_BITS == offsets.length)
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				offsets[at >>> CHECKPOINT_BITS] = at == count ? offset : ~offset;
+			}
+			count += chars;
+			offset += bytes;
+		}
+		this.length = count;
+		this.offsets = offsets;
+
+	} // MappedUtf8Chars
+
+	/**
+	 * @return how many bytes the UTF-8 sequence at offset takes, or 0 if it is
+	 *         not a well-formed one
+	 */
+	private int sequenceLength(int offset, int size) {
+
+		int first = MappedChars.byteAt(this.regions, offset);
+		if (first < 0x80) return 1;
+
+		int bytes, low = 0x80, high = 0xbf; // the range of the second byte
+		if (first >= 0xc2 && first <= 0xdf) bytes = 2;
+		else if (first >= 0xe0 && first <= 0xef) {
+			bytes = 3;
+			if (first == 0xe0) low = 0xa0; // shorter forms are overlong
+			if (first == 0xed) high = 0x9f; // the rest would be surrogates
+		} else if (first >= 0xf0 && first <= 0xf4) {
+			bytes = 4;
+			if (first == 0xf0) low = 0x90;
+			if (first == 0xf4) high = 0x8f; // the rest are past U+10FFFF
+		} else
+			return 0;
+
+		if (offset + bytes > size)
+			return 0;
+		int second = MappedChars.byteAt(this.regions, offset + 1);
+		if (second < low || second > high)
+			return 0;
+		for (int i = 2; i < bytes; i++)
+			if ((MappedChars.byteAt(this.regions, offset + i) & 0xc0) != 0x80)
+				return 0;
+		return bytes;
+
+	} // sequenceLength
+
+	@Override
+	public int length() {
+
+		return this.length;
+
+	} // length
+
+	/**
+	 * works in O(1) time after reading index - 1 or index, and in
+	 * O(CHECKPOINT) time otherwise
+	 */
+	@Override
+	public char charAt(int index) {
+
+		if (index < 0 || index >= this.length)
+			throw new IndexOutOfBoundsException();
+
+		// start at the checkpoint before index, unless the last read is closer
+		int at = this.index;
+		int offset = this.offset;
+		if (index < at || index - at > CHECKPOINT) {
+			at = index & -CHECKPOINT;
+			offset = this.offsets[index >>> CHECKPOINT_BITS];
+			if (offset < 0) { // the checkpoint is the second half of a pair
+				offset = ~offset;
+				at--;
+			}
+		}
+		while (true) {
+			int bytes = this.bytesAt(offset);
+			int chars = bytes == 4 ? 2 : 1;
+			if (index < at + chars) {
+				this.index = at;
+				this.offset = offset;
+				int codePoint = this.codePointAt(offset, bytes);
+				if (chars == 1) return (char) codePoint;
+				return index == at ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+			}
+			at += chars;
+			offset += bytes;
+		}
+
+	} // charAt
+
+	/**
+	 * @return how many bytes the already checked sequence at offset takes
+	 */
+	private int bytesAt(int offset) {
+
+		int first = MappedChars.byteAt(this.regions, offset);
+		if (first < 0x80) return 1;
+		if (first < 0xe0) return 2;
+		if (first < 0xf0) return 3;
+		return 4;
+
+	} // bytesAt
+
+	private int codePointAt(int offset, int bytes) {
+
+		int first = MappedChars.byteAt(this.regions, offset);
+		if (bytes == 1) return first;
+		int codePoint = first & (0x7f >>> bytes);
+		for (int i = 1; i < bytes; i++)
+			codePoint = codePoint << 6 | MappedChars.byteAt(this.regions, offset + i) & 0x3f;
+		return codePoint;
+
+	} // codePointAt
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+
+		StringBuilder builder = new StringBuilder(end - start);
+		builder.append(this, start, end);
+		return builder;
+
+	} // subSequence
+
+	@Override
+	public String toString() {
+
+		return this.subSequence(0, this.length).toString();
+
+	} // toString
+
+} // end MappedUtf8Chars
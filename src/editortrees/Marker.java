@@ -0,0 +1,74 @@
+package editortrees;
+
+import editortrees.Anchor.Gravity;
+
+/**
+ * something kept by a MarkerTree at a position of an EditTree, as a node of the
+ * MarkerTree's treap
+ */
+abstract class Marker {
+
+	final Gravity gravity; // which way the start moves for text added at it
+	MarkerTree tree; // null once removed
+
+	// treap fields, managed by the MarkerTree
+	int start; // position, not counting the shifts still pending in ancestors
+	int shift; // still to be added to the positions of this marker's descendants
+	final int priority;
+	Marker left, right, parent;
+
+	Marker(int start, Gravity gravity, int priority) {
+
+		this.start = start;
+		this.gravity = gravity;
+		this.priority = priority;
+
+	} // Marker
+
+	/**
+	 * @return the sum of the shifts still pending in the ancestors, O(log(M))
+	 * @throws IllegalStateException if the marker was removed from its tree
+	 */
+	int pendingShift() {
+
+		if (this.tree == null)
+			throw new IllegalStateException(this.getClass().getSimpleName().toLowerCase() + " was removed");
+
+		int shift = 0;
+		for (Marker ancestor = this.parent; ancestor != null; ancestor = ancestor.parent)
+			shift += ancestor.shift;
+		return shift;
+
+	} // pendingShift
+
+	/**
+	 * moves this marker and, lazily, all of its descendants
+	 */
+	void shiftBy(int length) {
+
+		this.start += length;
+		this.shift += length;
+
+	} // shiftBy
+
+	/**
+	 * moves this marker, whose start is inside a deleted range, for the deletion
+	 * 
+	 * @param pos    start of the deleted range
+	 * @param length length of the deleted range
+	 */
+	void collapse(int pos, int length) {
+
+		this.start = pos;
+
+	} // collapse
+
+	/**
+	 * recomputes what this marker keeps about its subtree, after its children
+	 * changed
+	 */
+	void update() {
+
+	} // update
+
+} // end Marker
@@ -0,0 +1,256 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import editortrees.Anchor.Gravity;
+
+/**
+ * the markers of one kind for one EditTree, in a treap ordered by start, with
+ * markers of left gravity in front of those of right gravity at the same start
+ * 
+ * an edit moves every marker behind it by adding a pending shift to one
+ * subtree, which is pushed down to the children only when the subtree is split
+ * or merged. so an edit works in O(log(M)) expected time for M markers, plus
+ * O(log(M)) for each marker inside a deleted range.
+ */
+class MarkerTree {
+
+	private final Random random;
+	Marker root;
+
+	MarkerTree() {
+
+		this.random = new Random();
+		this.root = null;
+
+	} // MarkerTree
+
+	/**
+	 * @return a priority for a new marker
+	 */
+	int nextPriority() {
+
+		return this.random.nextInt();
+
+	} // nextPriority
+
+	/**
+	 * adds a new marker in O(log(M)) expected time
+	 */
+	void add(Marker marker) {
+
+		marker.tree = this;
+		this.insert(marker);
+
+	} // add
+
+	/**
+	 * takes the marker out of this tree in O(log(M)) expected time
+	 */
+	void remove(Marker marker) {
+
+		// settle the positions around the marker so they do not depend on it
+		this.pushPath(marker);
+		push(marker);
+
+		Marker parent = marker.parent;
+		Marker replacement = this.merge(marker.left, marker.right);
+		if (replacement != null)
+			replacement.parent = parent;
+
+		if (parent == null)
+			this.root = replacement;
+		else if (parent.left == marker)
+			parent.left = replacement;
+		else
+			parent.right = replacement;
+
+		// the ancestors lost the marker from their subtrees
+		for (Marker ancestor = parent; ancestor != null; ancestor = ancestor.parent)
+			ancestor.update();
+
+		marker.left = marker.right = marker.parent = null;
+		marker.tree = null;
+
+	} // remove
+
+	/**
+	 * moves the markers for length characters added at pos
+	 */
+	void inserted(int pos, int length) {
+
+		// markers behind pos, and right gravity markers at pos, move
+		Marker[] parts = this.split(this.root, pos, Gravity.RIGHT);
+		this.moveEnds(parts[0], pos, 0, length);
+		shift(parts[1], length);
+		this.root = this.merge(parts[0], parts[1]);
+
+	} // inserted
+
+	/**
+	 * moves the markers for length characters deleted at pos
+	 */
+	void deleted(int pos, int length) {
+
+		Marker[] front = this.split(this.root, pos + 1, Gravity.LEFT);
+		Marker[] back = this.split(front[1], pos + length + 1, Gravity.LEFT);
+
+		// markers behind the range move back, markers inside go to its start
+		this.moveEnds(front[0], pos, length, 0);
+		shift(back[1], -length);
+		this.root = front[0];
+		ArrayList<Marker> inside = new ArrayList<Marker>();
+		this.collect(back[0], inside);
+		for (Marker marker : inside) {
+			marker.collapse(pos, length);
+			marker.left = marker.right = marker.parent = null;
+			marker.update();
+			this.insert(marker);
+		}
+		this.root = this.merge(this.root, back[1]);
+
+	} // deleted
+
+	/**
+	 * moves whatever the markers in front of an edit keep behind their start
+	 * 
+	 * @param front    root of the markers that start in front of the edit
+	 * @param pos      where the edit happened
+	 * @param removed  number of characters deleted at pos
+	 * @param inserted number of characters added at pos
+	 */
+	void moveEnds(Marker front, int pos, int removed, int inserted) {
+
+		// markers have nothing but their start by default
+
+	} // moveEnds
+
+	private void insert(Marker marker) {
+
+		Marker[] parts = this.split(this.root, marker.start, marker.gravity);
+		this.root = this.merge(this.merge(parts[0], marker), parts[1]);
+
+	} // insert
+
+	static void shift(Marker marker, int length) {
+
+		if (marker != null) marker.shiftBy(length);
+
+	} // shift
+
+	/**
+	 * hands the pending shift of the marker to its children
+	 */
+	static void push(Marker marker) {
+
+		if (marker.shift == 0) return;
+		shift(marker.left, marker.shift);
+		shift(marker.right, marker.shift);
+		marker.shift = 0;
+
+	} // push
+
+	/**
+	 * pushes the pending shifts on the path from the root down to the marker
+	 */
+	private void pushPath(Marker marker) {
+
+		if (marker.parent != null) {
+			this.pushPath(marker.parent);
+			push(marker.parent);
+		}
+
+	} // pushPath
+
+	/**
+	 * @return true iff the marker comes in front of position pos with the gravity
+	 */
+	private static boolean before(Marker marker, int pos, Gravity gravity) {
+
+		return marker.start < pos || (marker.start == pos && marker.gravity.compareTo(gravity) < 0);
+
+	} // before
+
+	/**
+	 * splits a treap into the markers in front of (pos, gravity) and the rest
+	 * 
+	 * @return the two treaps, either of which may be null
+	 */
+	Marker[] split(Marker marker, int pos, Gravity gravity) {
+
+		if (marker == null) return new Marker[2];
+
+		push(marker);
+		Marker[] parts;
+		if (before(marker, pos, gravity)) {
+			parts = this.split(marker.right, pos, gravity);
+			marker.right = parts[0];
+			setParent(parts[0], marker);
+			parts[0] = marker;
+		} else {
+			parts = this.split(marker.left, pos, gravity);
+			marker.left = parts[1];
+			setParent(parts[1], marker);
+			parts[1] = marker;
+		}
+		marker.parent = null;
+		marker.update();
+		return parts;
+
+	} // split
+
+	/**
+	 * @return the treap with all markers of first followed by all of second
+	 */
+	Marker merge(Marker first, Marker second) {
+
+		if (first == null) return second;
+		if (second == null) return first;
+
+		if (first.priority > second.priority) {
+			push(first);
+			first.right = this.merge(first.right, second);
+			setParent(first.right, first);
+			first.update();
+			return first;
+		}
+		push(second);
+		second.left = this.merge(first, second.left);
+		setParent(second.left, second);
+		second.update();
+		return second;
+
+	} // merge
+
+	private static void setParent(Marker child, Marker parent) {
+
+		if (child != null) child.parent = parent;
+
+	} // setParent
+
+	/**
+	 * @return every marker in order, with all shifts pushed, in O(M) time
+	 */
+	ArrayList<Marker> all() {
+
+		ArrayList<Marker> list = new ArrayList<Marker>();
+		this.collect(this.root, list);
+		return list;
+
+	} // all
+
+	/**
+	 * adds the markers of the treap to the list in order, pushing all shifts
+	 */
+	private void collect(Marker marker, ArrayList<Marker> list) {
+
+		if (marker == null) return;
+		push(marker);
+		this.collect(marker.left, list);
+		list.add(marker);
+		this.collect(marker.right, list);
+
+	} // collect
+
+} // end MarkerTree
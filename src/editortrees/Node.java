@@ -1,11 +1,13 @@
 package editortrees;
 
 import java.util.ArrayList;
+import java.util.function.Predicate;
 import editortrees.EditTree.NodeInfo;
 
 /**
  * a node in a height-balanced binary tree with rank
- * except for the NULL_NODE, one node cannot belong to two different trees
+ * except for the NULL_NODE and nodes marked shared, which are never changed,
+ * one node cannot belong to two different trees
  * 
  * @author Jared Kagay
  * @author Ethan Townsend
@@ -17,7 +19,15 @@ public class Node {
 	char data;
 	Node left, right; // subtrees
 	int rank; // in-order position of this node within its own subtree.
+	int size; // number of nodes within this node's subtree
 	Code balance; // whether the left or right subtree has a greater height
+	int lines; // number of newline characters within this node's subtree
+	long mask; // bit (ch & 63) is set for each character ch within this node's subtree, and maybe more after a transform
+	Aggregates aggregates; // extra summaries kept by this node's tree, null if none
+	Object[] summaries; // this node's subtree summary for each of the aggregates
+	boolean reversed; // the subtrees of this node are still to be mirrored
+	LazyTransform transform; // still to be applied to the subtrees of this node, null if none
+	boolean shared; // also a subtree of another node, so it is copied before it changes
 
 	static final Node NULL_NODE = new Node();
 
@@ -28,6 +38,9 @@ public class Node {
 		this.right = right;
 		this.rank = 0;
 		this.balance = Code.SAME;
+		this.size = left == null ? 0 : 1;
+		this.lines = data == '\n' ? 1 : 0;
+		this.mask = left == null ? 0 : maskOf(data); // the NULL_NODE holds no characters
 
 		this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
 
@@ -45,9 +58,18 @@ public class Node {
 		
 	} // Node
 
+	public Node(char data, Aggregates aggregates) {
+
+		this(data);
+		this.aggregates = aggregates;
+		this.updateSubtreeInfo();
+
+	} // Node
+
 	enum Code {
 		
-		LEFT, SAME, RIGHT;
+		LEFT, SAME, RIGHT,
+		UNKNOWN; // left by a relaxed add, until the tree's balance is restored
 
 		// used in the displayer and debug string
 		public String toString() {
@@ -59,6 +81,8 @@ public class Node {
 				return "=";
 			case RIGHT:
 				return "\\";
+			case UNKNOWN:
+				return "?";
 			default:
 				throw new IllegalStateException();
 			}
@@ -69,10 +93,12 @@ public class Node {
 	
 	public Node add(char ch, NodeInfo nodeInfo) {
 
-		if (this == NULL_NODE) return new Node(ch); // base case
+		if (this == NULL_NODE) return new Node(ch, nodeInfo.aggregates); // base case
+		this.pushDown();
 
 		// move all the way right to get to last index
 		this.right = this.right.add(ch, nodeInfo);
+		this.updateSubtreeInfo();
 
 		// update balance codes moving up the tree
 		if (!nodeInfo.balanced) {
@@ -89,6 +115,7 @@ public class Node {
 				nodeInfo.spins++;
 				this.balance = Code.SAME;
 
+				this.right.pushDown();
 				// needs double rotation
 				if (this.right.balance == Code.LEFT) {
 					nodeInfo.spins++;
@@ -120,12 +147,14 @@ public class Node {
 
 	public Node add(char ch, int pos, NodeInfo nodeInfo) {
 
-		if (this == NULL_NODE) return new Node(ch);
+		if (this == NULL_NODE) return new Node(ch, nodeInfo.aggregates);
+		this.pushDown();
 
 		if (pos <= this.rank) { // the index is too large
 
 			// move to the left
 			this.left = this.left.add(ch, pos, nodeInfo);
+			this.updateSubtreeInfo();
 
 			// update balance codes moving up the tree
 			if (!nodeInfo.balanced) {
@@ -142,6 +171,7 @@ public class Node {
 					nodeInfo.spins++;
 					this.balance = Code.SAME;
 
+					this.left.pushDown();
 					// needs double rotation
 					if (this.left.balance == Code.RIGHT) {
 						nodeInfo.spins++;
@@ -175,6 +205,7 @@ public class Node {
 			
 			// move to the right
 			this.right = this.right.add(ch, pos - this.rank - 1, nodeInfo);
+			this.updateSubtreeInfo();
 
 			// update balance codes moving up the tree
 			if (!nodeInfo.balanced) {
@@ -190,6 +221,7 @@ public class Node {
 					nodeInfo.spins++;
 					this.balance = Code.SAME;
 
+					this.right.pushDown();
 					// needs double rotation
 					if (this.right.balance == Code.LEFT) {
 						nodeInfo.spins++;
@@ -221,18 +253,80 @@ public class Node {
 
 	} // add
 
+	/**
+	 * adds like add, but without rotating: the nodes on the way down are
+	 * tagged UNKNOWN instead. when the new node ends up more than
+	 * nodeInfo.heightFactor times log2(nodeInfo.size) deep, the lowest node
+	 * above it whose subtree is too tall for its size by that factor has its
+	 * tagged nodes rebalanced by repair, which keeps the tree within that factor
+	 * of the best height. heights are checked against nodeInfo.sizes, not
+	 * logarithms.
+	 * works in O(log(N)) amortized time
+	 */
+	public Node addRelaxed(char ch, int pos, NodeInfo nodeInfo, int depth) {
+
+		if (this == NULL_NODE) {
+			nodeInfo.rebuild = nodeInfo.sizeFor(depth) > nodeInfo.size;
+			nodeInfo.below = 0;
+			return new Node(ch, nodeInfo.aggregates);
+		}
+		this.pushDown();
+
+		if (pos <= this.rank) {
+			this.left = this.left.addRelaxed(ch, pos, nodeInfo, depth + 1);
+			this.rank++;
+		} else
+			this.right = this.right.addRelaxed(ch, pos - this.rank - 1, nodeInfo, depth + 1);
+		this.balance = Code.UNKNOWN;
+		this.updateSubtreeInfo();
+
+		nodeInfo.below++;
+		if (nodeInfo.rebuild && nodeInfo.sizeFor(nodeInfo.below) > this.size) {
+			nodeInfo.rebuild = false;
+			return repair(this, nodeInfo).node;
+		}
+		return this;
+
+	} // addRelaxed
+
+	/**
+	 * restores correct balance codes, and the height balance they describe, to
+	 * the nodes tagged UNKNOWN by addRelaxed. subtrees without tags are left
+	 * alone, and each tagged node joins its repaired subtrees like join does.
+	 * works in O(T * log(N)) time for T tagged nodes
+	 * 
+	 * @return the repaired tree with its height
+	 */
+	static NodeAndHeight repair(Node node, NodeInfo nodeInfo) {
+
+		if (node.balance != Code.UNKNOWN)
+			return new NodeAndHeight(node, node.fastHeight());
+
+		node.pushDown();
+		NodeAndHeight left = repair(node.left, nodeInfo);
+		NodeAndHeight right = repair(node.right, nodeInfo);
+		return join(left.node, left.height, node, right.node, right.height, nodeInfo);
+
+	} // repair
+
 	/**
 	 * method for a single left rotation at the current node
 	 * works in O(1) time
 	 */
 	private Node rotateLeft(Node parent, Node child) {
 		
+		parent.pushDown();
+		child.pushDown();
+
 		// switches parent and child
 		Node temp = child.left;
 		child.left = parent;
 		parent.right = temp;
 		
 		child.rank += parent.rank + 1;
+
+		parent.updateSubtreeInfo();
+		child.updateSubtreeInfo();
 		return child;
 		
 	} // singleLeftRotation
@@ -243,19 +337,156 @@ public class Node {
 	 */
 	private Node rotateRight(Node parent, Node child) {
 		
+		parent.pushDown();
+		child.pushDown();
+
 		// switches parent and child
 		Node temp = child.right;
 		child.right = parent;
 		parent.left = temp;
 		
 		parent.rank = parent.rank - child.rank - 1;
+
+		parent.updateSubtreeInfo();
+		child.updateSubtreeInfo();
 		return child;
 		
 	} // singleRightRotation
 
+	/**
+	 * recomputes the values this node keeps about its whole subtree
+	 * must be called whenever a child or the data of this node changes
+	 * works in O(1) time
+	 */
+	void updateSubtreeInfo() {
+
+		this.size = this.left.size + this.right.size + 1;
+		this.lines = this.left.lines + this.right.lines + (this.data == '\n' ? 1 : 0);
+		this.mask = this.left.mask | this.right.mask | maskOf(this.data);
+		if (this.aggregates != null)
+			this.aggregates.summarize(this);
+
+	} // updateSubtreeInfo
+
+	/**
+	 * mirrors this subtree: this node's subtrees trade places now, and their
+	 * own subtrees once they are visited. the summaries are reversed now, so
+	 * every aggregate must be reversible.
+	 * works in O(1) time
+	 */
+	void reverse() {
+
+		if (this == NULL_NODE) return;
+
+		Node left = this.left;
+		this.left = this.right;
+		this.right = left;
+		this.rank = this.left.size;
+		if (this.balance == Code.LEFT) this.balance = Code.RIGHT;
+		else if (this.balance == Code.RIGHT) this.balance = Code.LEFT;
+		this.reversed = !this.reversed;
+		if (this.aggregates != null)
+			this.aggregates.reverse(this);
+
+	} // reverse
+
+	/**
+	 * transforms every character of this subtree: this node's character now, and
+	 * the others once they are visited. the mask then holds the bits of every
+	 * character the old ones could become, which may be more than are there.
+	 * works in O(1) time
+	 */
+	void transform(LazyTransform transform) {
+
+		if (this == NULL_NODE) return;
+
+		this.data = transform.apply(this.data);
+		this.mask = transform.apply(this.mask);
+		this.transform = this.transform == null ? transform : this.transform.then(transform);
+
+	} // transform
+
+	/**
+	 * hands this node's pending reverse and transform to its subtrees, which
+	 * must happen before anything below this node is read or changed. shared
+	 * subtrees are first replaced by copies that only this node holds.
+	 * works in O(1) time
+	 */
+	void pushDown() {
+
+		if (this.left.shared)
+			this.left = this.left.copy();
+		if (this.right.shared)
+			this.right = this.right.copy();
+		if (this.reversed) {
+			this.left.reverse();
+			this.right.reverse();
+			this.reversed = false;
+		}
+		if (this.transform != null) {
+			this.left.transform(this.transform);
+			this.right.transform(this.transform);
+			this.transform = null;
+		}
+
+	} // pushDown
+
+	/**
+	 * @return a node like this one, with the same subtrees, which from then on
+	 *         are shared. works in O(1) time
+	 */
+	Node copy() {
+
+		Node copy = new Node(this.data, this.left, this.right);
+		copy.rank = this.rank;
+		copy.size = this.size;
+		copy.balance = this.balance;
+		copy.lines = this.lines;
+		copy.mask = this.mask;
+		copy.aggregates = this.aggregates;
+		copy.summaries = this.summaries == null ? null : this.summaries.clone();
+		copy.reversed = this.reversed;
+		copy.transform = this.transform;
+		if (this.left != NULL_NODE)
+			this.left.shared = true;
+		if (this.right != NULL_NODE)
+			this.right.shared = true;
+		return copy;
+
+	} // copy
+
+	/**
+	 * @return the mask bit of the character, shared by every character equal to
+	 *         it modulo 64
+	 */
+	static long maskOf(char ch) {
+
+		return 1L << (ch & 63);
+
+	} // maskOf
+
+	/**
+	 * makes every node of this subtree keep the given aggregates
+	 * works in O(N) time
+	 */
+	void useAggregates(Aggregates aggregates) {
+
+		if (this == NULL_NODE) return;
+		this.pushDown();
+
+		// children first so their summaries are ready for this node
+		this.left.useAggregates(aggregates);
+		this.right.useAggregates(aggregates);
+		this.aggregates = aggregates;
+		this.summaries = null;
+		this.updateSubtreeInfo();
+
+	} // useAggregates
+
 	public Node get(int pos) {
 
 		if (this == NULL_NODE) throw new IndexOutOfBoundsException();
+		this.pushDown();
 
 		if (pos < this.rank) return this.left.get(pos); // must be in left subtree
 		
@@ -316,6 +547,7 @@ public class Node {
 	public void toRankString(ArrayList<String> list) {
 
 		if (this == NULL_NODE) return;
+		this.pushDown();
 
 		// pre-order iteration
 		list.add("" + this.data + this.rank);
@@ -327,6 +559,7 @@ public class Node {
 	public void toString(StringBuilder stringBuilder) {
 
 		if (this == NULL_NODE) return;
+		this.pushDown();
 		
 		// create pre-order string
 		this.left.toString(stringBuilder);
@@ -339,6 +572,7 @@ public class Node {
 
 		// end recursion at null node
 		if (currentNode == NULL_NODE) return NULL_NODE;
+		currentNode.pushDown();
 
 		// set left & right nodes
 		this.left = new Node(currentNode.left.data).copyTree(currentNode.left);
@@ -347,6 +581,8 @@ public class Node {
 		// update rank & balance code
 		this.rank = currentNode.rank;
 		this.balance = currentNode.balance;
+		this.aggregates = currentNode.aggregates;
+		this.updateSubtreeInfo();
 
 		return this;
 
@@ -368,6 +604,7 @@ public class Node {
 	public String toDebugString(String string) {
 		
 		if (this == NULL_NODE) return string;
+		this.pushDown();
 		
 		return string + this.data + this.rank + this.balance.toString() + ", " 
 			+ this.left.toDebugString(string) + this.right.toDebugString(string);
@@ -425,12 +662,14 @@ public class Node {
 	public Node delete(int index, NodeInfo nodeInfo) {
 
 		if (this == NULL_NODE) return this;
+		this.pushDown();
 		
-		else if (this.rank > index) { // the index is too large
+		if (this.rank > index) { // the index is too large
 			
 			// move left
 			this.left = this.left.delete(index, nodeInfo);
 			this.rank--; // the node is being removed from the left subtree
+			this.updateSubtreeInfo();
 			
 			// update balance codes moving up the tree
 			if (!nodeInfo.balanced) {
@@ -449,6 +688,7 @@ public class Node {
 					nodeInfo.spins++;
 					this.balance = Code.SAME;
 					
+					this.right.pushDown();
 					// needs double rotation
 					if (this.right.balance == Code.LEFT) {
 						nodeInfo.spins++;
@@ -489,6 +729,7 @@ public class Node {
 			
 			// move right
 			this.right = this.right.delete(index - this.rank - 1, nodeInfo);
+			this.updateSubtreeInfo();
 			
 			// update balance codes moving up the tree
 			if (!nodeInfo.balanced) {
@@ -507,6 +748,7 @@ public class Node {
 					nodeInfo.spins++;
 					this.balance = Code.SAME;
 
+					this.left.pushDown();
 					// needs double rotation
 					if (this.left.balance == Code.RIGHT) {
 						nodeInfo.spins++;
@@ -556,6 +798,7 @@ public class Node {
 			this.right = this.right.delete(0, nodeInfo);
 			this.data = nodeInfo.deletedData;
 			nodeInfo.deletedData = data;
+			this.updateSubtreeInfo();
 			
 			// update balance codes moving up the tree
 			if (!nodeInfo.balanced) {
@@ -575,6 +818,7 @@ public class Node {
 					nodeInfo.spins++;
 					this.balance = Code.SAME;
 
+					this.left.pushDown();
 					// needs double rotation
 					if (this.left.balance == Code.RIGHT) {
 						nodeInfo.spins++;
@@ -593,10 +837,10 @@ public class Node {
 					}
 					
 					// special case
-					else if (this.right.balance == Code.SAME) {
+					else if (this.left.balance == Code.SAME) {
 						
-						this.right.balance = Code.LEFT;
-						this.balance = Code.RIGHT;
+						this.left.balance = Code.RIGHT;
+						this.balance = Code.LEFT;
 						nodeInfo.balanced = true;
 						
 					}
@@ -617,40 +861,68 @@ public class Node {
 
 	public NodeAndHeight buildTreeFromString(String s) {
 		
-		if (s.equals("")) return new NodeAndHeight(NULL_NODE, -1);
+		return this.buildTree(s.toCharArray(), 0, s.length());
+		
+	} // buildTreeFromString
+	
+	/**
+	 * builds this node into a tree holding chars[from, to), with the middle
+	 * character at the root and each half built the same way
+	 * creates tree in O(n) time
+	 */
+	NodeAndHeight buildTree(char[] chars, int from, int to) {
+		
+		if (from == to) return new NodeAndHeight(NULL_NODE, -1);
+		
+		this.fill(chars, from, to);
+		return new NodeAndHeight(this, heightOfBuilt(to - from));
+		
+	} // buildTree
+	
+	/**
+	 * @return the height of the tree buildTree makes of size characters, which
+	 *         is the height of a complete tree of that size
+	 */
+	private static int heightOfBuilt(int size) {
 		
-		int length = s.length() / 2;
+		return 31 - Integer.numberOfLeadingZeros(size);
+		
+	} // heightOfBuilt
+	
+	private void fill(char[] chars, int from, int to) {
+		
+		int mid = from + (to - from) / 2;
 		
 		// build left subtree
-		String leftS = s.substring(0, length);
-		NodeAndHeight leftNodeAndHeight = new Node().buildTreeFromString(leftS);
-		this.left = leftNodeAndHeight.node;
+		if (from < mid) {
+			this.left = new Node();
+			this.left.fill(chars, from, mid);
+		} else this.left = NULL_NODE;
 
 		// build right subtree
-		String rightS = s.substring(length + 1);
-		NodeAndHeight rightNodeAndHeight = new Node().buildTreeFromString(rightS);
-		this.right = rightNodeAndHeight.node;
+		if (mid + 1 < to) {
+			this.right = new Node();
+			this.right.fill(chars, mid + 1, to);
+		} else this.right = NULL_NODE;
 		
-		int leftHeight = leftNodeAndHeight.height;
-		int rightHeight = rightNodeAndHeight.height;
-		
-		// build this node using given data
+		// the halves differ in size by at most one, so in height by at most one
+		int leftHeight = mid == from ? -1 : heightOfBuilt(mid - from);
+		int rightHeight = mid + 1 == to ? -1 : heightOfBuilt(to - mid - 1);
 		if (leftHeight > rightHeight) this.balance = Code.LEFT;
 		else if (rightHeight > leftHeight) this.balance = Code.RIGHT;
 		else this.balance = Code.SAME;
 		
-		this.data = s.charAt(length);
-		this.rank = leftS.length();
-		
-		return new NodeAndHeight(this, Math.max(leftHeight, rightHeight) + 1);
+		this.data = chars[mid];
+		this.rank = mid - from;
+		this.updateSubtreeInfo();
 		
-	} // buildTreeFromString
+	} // fill
 	
 	/**
 	 * used for the string constructor
 	 * creates tree in O(n) time
 	 */
-	public class NodeAndHeight {
+	public static class NodeAndHeight {
 		
 		Node node;
 		int height;
@@ -664,9 +936,161 @@ public class Node {
 		
 	} // end NodeAndHeight
 
+	/**
+	 * @return the height of the left subtree of node, whose height is height
+	 */
+	static int leftHeight(Node node, int height) {
+
+		return node.balance == Code.RIGHT ? height - 2 : height - 1;
+
+	} // leftHeight
+
+	/**
+	 * @return the height of the right subtree of node, whose height is height
+	 */
+	static int rightHeight(Node node, int height) {
+
+		return node.balance == Code.LEFT ? height - 2 : height - 1;
+
+	} // rightHeight
+
+	/**
+	 * splits the tree rooted at node, whose height is height, into the tree of
+	 * its first pos nodes and the tree of the rest, each height balanced
+	 * works in O(log(N)) time, since each join costs the difference in height of
+	 * the trees it joins and those differences add up to the height
+	 * 
+	 * @return the two trees with their heights
+	 */
+	static NodeAndHeight[] split(Node node, int height, int pos, NodeInfo nodeInfo) {
+
+		if (node == NULL_NODE)
+			return new NodeAndHeight[] { new NodeAndHeight(NULL_NODE, -1), new NodeAndHeight(NULL_NODE, -1) };
+
+		node.pushDown();
+		int leftHeight = leftHeight(node, height);
+		int rightHeight = rightHeight(node, height);
+		Node left = node.left;
+		Node right = node.right;
+
+		NodeAndHeight[] parts;
+		if (pos <= node.rank) {
+			parts = split(left, leftHeight, pos, nodeInfo);
+			parts[1] = join(parts[1].node, parts[1].height, node, right, rightHeight, nodeInfo);
+		} else {
+			parts = split(right, rightHeight, pos - node.rank - 1, nodeInfo);
+			parts[0] = join(left, leftHeight, node, parts[0].node, parts[0].height, nodeInfo);
+		}
+		return parts;
+
+	} // split
+
+	/**
+	 * makes one height balanced tree of all the nodes of left, then middle, then
+	 * all the nodes of right, by hanging the shorter tree and middle off the
+	 * side of the taller tree where their heights meet, and rotating on the way
+	 * back up like add does
+	 * works in O(|leftHeight - rightHeight| + 1) time
+	 * 
+	 * @param middle a node of neither tree, whose children are replaced
+	 * @return the joined tree with its height
+	 */
+	static NodeAndHeight join(Node left, int leftHeight, Node middle, Node right, int rightHeight,
+			NodeInfo nodeInfo) {
+
+		if (leftHeight > rightHeight + 1) {
+			left.pushDown();
+			NodeAndHeight joined = join(left.right, rightHeight(left, leftHeight), middle, right, rightHeight, nodeInfo);
+			return rebalance(left, left.left, leftHeight(left, leftHeight), joined.node, joined.height, nodeInfo);
+		}
+		if (rightHeight > leftHeight + 1) {
+			right.pushDown();
+			NodeAndHeight joined = join(left, leftHeight, middle, right.left, leftHeight(right, rightHeight), nodeInfo);
+			return rebalance(right, joined.node, joined.height, right.right, rightHeight(right, rightHeight), nodeInfo);
+		}
+		return attach(middle, left, leftHeight, right, rightHeight);
+
+	} // join
+
+	/**
+	 * @return the tree of all the nodes of first followed by all of second
+	 */
+	static NodeAndHeight concatenate(NodeAndHeight first, NodeAndHeight second, NodeInfo nodeInfo) {
+
+		if (first.node == NULL_NODE) return second;
+		if (second.node == NULL_NODE) return first;
+
+		// the first node of second joins the two
+		NodeAndHeight[] parts = split(second.node, second.height, 1, nodeInfo);
+		return join(first.node, first.height, parts[0].node, parts[1].node, parts[1].height, nodeInfo);
+
+	} // concatenate
+
+	/**
+	 * gives node the subtrees left and right, which may differ in height by at
+	 * most two, rotating if they differ by two
+	 * works in O(1) time
+	 */
+	private static NodeAndHeight rebalance(Node node, Node left, int leftHeight, Node right, int rightHeight,
+			NodeInfo nodeInfo) {
+
+		if (rightHeight == leftHeight + 2) {
+			right.pushDown();
+			right.left.pushDown();
+			int innerHeight = leftHeight(right, rightHeight);
+			int outerHeight = rightHeight(right, rightHeight);
+			if (outerHeight >= innerHeight) { // single rotation
+				nodeInfo.spins++;
+				NodeAndHeight lower = attach(node, left, leftHeight, right.left, innerHeight);
+				return attach(right, lower.node, lower.height, right.right, outerHeight);
+			}
+			nodeInfo.spins += 2; // double rotation
+			Node inner = right.left;
+			NodeAndHeight lower = attach(node, left, leftHeight, inner.left, leftHeight(inner, innerHeight));
+			NodeAndHeight upper = attach(right, inner.right, rightHeight(inner, innerHeight), right.right, outerHeight);
+			return attach(inner, lower.node, lower.height, upper.node, upper.height);
+		}
+		if (leftHeight == rightHeight + 2) {
+			left.pushDown();
+			left.right.pushDown();
+			int innerHeight = rightHeight(left, leftHeight);
+			int outerHeight = leftHeight(left, leftHeight);
+			if (outerHeight >= innerHeight) { // single rotation
+				nodeInfo.spins++;
+				NodeAndHeight lower = attach(node, left.right, innerHeight, right, rightHeight);
+				return attach(left, left.left, outerHeight, lower.node, lower.height);
+			}
+			nodeInfo.spins += 2; // double rotation
+			Node inner = left.right;
+			NodeAndHeight lower = attach(node, inner.right, rightHeight(inner, innerHeight), right, rightHeight);
+			NodeAndHeight upper = attach(left, left.left, outerHeight, inner.left, leftHeight(inner, innerHeight));
+			return attach(inner, upper.node, upper.height, lower.node, lower.height);
+		}
+		return attach(node, left, leftHeight, right, rightHeight);
+
+	} // rebalance
+
+	/**
+	 * gives node the subtrees left and right, which differ in height by at most
+	 * one, in O(1) time
+	 */
+	private static NodeAndHeight attach(Node node, Node left, int leftHeight, Node right, int rightHeight) {
+
+		node.left = left;
+		node.right = right;
+		node.rank = left.size;
+		if (leftHeight > rightHeight) node.balance = Code.LEFT;
+		else if (rightHeight > leftHeight) node.balance = Code.RIGHT;
+		else node.balance = Code.SAME;
+		node.updateSubtreeInfo();
+		return new NodeAndHeight(node, Math.max(leftHeight, rightHeight) + 1);
+
+	} // attach
+
 	public void get(int leftPos, int rightPos, StringBuilder stringBuilder) {
 		
 		if (this == NULL_NODE) return;
+		this.pushDown();
 		
 		// get values in left subtree
 		if (leftPos < this.rank)
@@ -682,6 +1106,164 @@ public class Node {
 		
 	} // end get
 
+	/**
+	 * finds the position of a newline within this subtree
+	 * works in O(log(N)) time
+	 * 
+	 * @param k how many newlines of this subtree come before the wanted one
+	 * @return the in-order position of that newline within this subtree
+	 */
+	public int newlinePosition(int k) {
+
+		if (this == NULL_NODE) throw new IndexOutOfBoundsException();
+		this.pushDown();
+
+		if (k < this.left.lines) return this.left.newlinePosition(k); // must be in left subtree
+
+		k -= this.left.lines;
+		if (this.data == '\n') {
+			if (k == 0) return this.rank; // this node is the newline
+			k--;
+		}
+
+		return this.rank + 1 + this.right.newlinePosition(k); // must be in right subtree
+
+	} // newlinePosition
+
+	/**
+	 * counts the newlines that come before a position within this subtree
+	 * works in O(log(N)) time
+	 * 
+	 * @param pos in-order position within this subtree
+	 * @return the number of newlines in front of pos
+	 */
+	public int linesBefore(int pos) {
+
+		if (this == NULL_NODE) return 0;
+		this.pushDown();
+
+		if (pos <= this.rank) return this.left.linesBefore(pos);
+
+		// the whole left subtree and this node come before pos
+		int before = this.left.lines + (this.data == '\n' ? 1 : 0);
+		return before + this.right.linesBefore(pos - this.rank - 1);
+
+	} // linesBefore
+
+	/**
+	 * finds the first occurrence of ch at or after from within this subtree,
+	 * skipping every subtree whose mask shows it cannot hold ch
+	 * works in O(log(N)) time plus the subtrees that share ch's mask bit
+	 * 
+	 * @return the position within this subtree, or -1 if there is none
+	 */
+	public int indexOf(char ch, int from) {
+
+		if (this == NULL_NODE || (this.mask & maskOf(ch)) == 0) return -1;
+		this.pushDown();
+
+		// look in the left subtree first
+		if (from < this.rank) {
+			int found = this.left.indexOf(ch, from);
+			if (found >= 0) return found;
+		}
+
+		if (from <= this.rank && this.data == ch) return this.rank;
+
+		int found = this.right.indexOf(ch, Math.max(from - this.rank - 1, 0));
+		return found < 0 ? -1 : found + this.rank + 1;
+
+	} // indexOf
+
+	/**
+	 * finds the last occurrence of ch at or before from within this subtree,
+	 * skipping every subtree whose mask shows it cannot hold ch
+	 * 
+	 * @return the position within this subtree, or -1 if there is none
+	 */
+	public int lastIndexOf(char ch, int from) {
+
+		if (this == NULL_NODE || from < 0 || (this.mask & maskOf(ch)) == 0) return -1;
+		this.pushDown();
+
+		// look in the right subtree first
+		if (from > this.rank) {
+			int found = this.right.lastIndexOf(ch, from - this.rank - 1);
+			if (found >= 0) return found + this.rank + 1;
+		}
+
+		if (from >= this.rank && this.data == ch) return this.rank;
+
+		return this.left.lastIndexOf(ch, Math.min(from, this.rank - 1));
+
+	} // lastIndexOf
+
+	/**
+	 * folds the summaries of the characters from position from up to, but not
+	 * including, position to within this subtree
+	 * whole subtrees inside the range use their kept summary, so this works in
+	 * O(log(N)) time
+	 * 
+	 * @param size the number of nodes in this subtree
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T fold(Aggregate<T> aggregate, int index, int size, int from, int to) {
+
+		if (this == NULL_NODE || from >= to) return aggregate.identity();
+
+		if (from == 0 && to == size) return (T) this.summaries[index]; // whole subtree
+		this.pushDown();
+
+		T result = this.left.fold(aggregate, index, this.rank, from, Math.min(to, this.rank));
+
+		// include this node if in range
+		if (from <= this.rank && this.rank < to)
+			result = aggregate.combine(result, aggregate.of(this.data));
+
+		T rightResult = this.right.fold(aggregate, index, size - this.rank - 1,
+				Math.max(from - this.rank - 1, 0), to - this.rank - 1);
+		return aggregate.combine(result, rightResult);
+
+	} // fold
+
+	/**
+	 * finds the first position whose prefix summary, up to and including that
+	 * position, satisfies the predicate
+	 * the predicate must stay true once it becomes true for a prefix
+	 * works in O(log(N)) time
+	 * 
+	 * @return that position, or the size of this subtree if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> int search(Aggregate<T> aggregate, int index, Predicate<? super T> predicate) {
+
+		T before = aggregate.identity(); // summary of everything left of node
+		int pos = 0;
+		Node node = this;
+
+		while (node != NULL_NODE) {
+
+			node.pushDown();
+			T withLeft = aggregate.combine(before, (T) this.aggregates.summary(node.left, index));
+			if (predicate.test(withLeft)) {
+				node = node.left; // answer is in the left subtree
+				continue;
+			}
+
+			T withNode = aggregate.combine(withLeft, aggregate.of(node.data));
+			if (predicate.test(withNode)) return pos + node.rank; // answer is this node
+
+			// answer is in the right subtree
+			before = withNode;
+			pos += node.rank + 1;
+			node = node.right;
+
+		}
+
+		return pos;
+
+	} // search
+
 	public boolean hasLeft() {
 		
 		return this.left != NULL_NODE;
@@ -0,0 +1,94 @@
+package editortrees;
+
+import java.util.ArrayDeque;
+
+/**
+ * walks the characters of a tree in order, one node at a time, without copying
+ * them out first
+ * the stack holds the nodes still to be visited on the path from the root, so
+ * seeking works in O(log(N)) time and each step in amortized O(1) time
+ */
+class NodeCursor {
+
+	private final ArrayDeque<Node> stack;
+	private final boolean forward;
+	private int pos; // position of the character the next call returns
+
+	/**
+	 * @param root    root of the tree to walk
+	 * @param pos     position of the first character to return
+	 * @param forward true to walk toward the end, false toward the beginning
+	 */
+	NodeCursor(Node root, int pos, boolean forward) {
+
+		this.stack = new ArrayDeque<Node>();
+		this.forward = forward;
+		this.seek(root, pos);
+
+	} // NodeCursor
+
+	/**
+	 * moves the cursor so the next call returns the character at pos
+	 * works in O(log(N)) time
+	 */
+	void seek(Node root, int pos) {
+
+		this.stack.clear();
+		this.pos = pos;
+
+		// keep every node that is still ahead of pos in the walk direction
+		Node node = root;
+		while (node != Node.NULL_NODE) {
+			node.pushDown();
+			if (pos == node.rank) {
+				this.stack.push(node);
+				return;
+			}
+			if ((pos < node.rank) == this.forward)
+				this.stack.push(node);
+			if (pos < node.rank)
+				node = node.left;
+			else {
+				pos -= node.rank + 1;
+				node = node.right;
+			}
+		}
+
+	} // seek
+
+	boolean hasNext() {
+
+		return !this.stack.isEmpty();
+
+	} // hasNext
+
+	/**
+	 * @return the position of the character the next call to next() returns
+	 */
+	int position() {
+
+		return this.pos;
+
+	} // position
+
+	/**
+	 * @return the next character in the walk direction
+	 */
+	char next() {
+
+		Node node = this.stack.pop();
+
+		// the nodes after this one are the near side of its far subtree
+		Node child = this.forward ? node.right : node.left;
+		while (child != Node.NULL_NODE) {
+			child.pushDown();
+			this.stack.push(child);
+			child = this.forward ? child.left : child.right;
+		}
+
+		this.pos += this.forward ? 1 : -1;
+		return node.data;
+
+	} // next
+
+} // end NodeCursor
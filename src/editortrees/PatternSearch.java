@@ -0,0 +1,106 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Knuth-Morris-Pratt search over the characters of a tree, streamed through a
+ * NodeCursor so the text is never copied into a String
+ * each search works in O(log(N) + m + k) time, where m is the pattern length
+ * and k the number of characters looked at
+ * 
+ * when the text keeps failing to start a match, the search jumps to the next
+ * occurrence of the pattern's first character with the node masks, so sparse
+ * matches cost about O(log(N)) each instead of a scan of the gap between them
+ */
+class PatternSearch {
+
+	private final CharSequence pattern;
+	private final int[] fallback; // fallback[i]: longest proper border of pattern[0..i]
+	private final boolean forward;
+
+	// misses in a row before jumping, so dense text is not slowed by seeks
+	private static final int MISSES_BEFORE_JUMP = 8;
+
+	/**
+	 * @param forward true to match left to right, false to match the reversed
+	 *                pattern right to left
+	 */
+	PatternSearch(CharSequence pattern, boolean forward) {
+
+		this.pattern = pattern;
+		this.forward = forward;
+		this.fallback = new int[pattern.length()];
+
+		// standard KMP failure table on the pattern as read in the walk direction
+		for (int i = 1, k = 0; i < pattern.length(); i++) {
+			while (k > 0 && this.charAt(i) != this.charAt(k))
+				k = this.fallback[k - 1];
+			if (this.charAt(i) == this.charAt(k))
+				k++;
+			this.fallback[i] = k;
+		}
+
+	} // PatternSearch
+
+	private char charAt(int i) {
+
+		return this.forward ? this.pattern.charAt(i) : this.pattern.charAt(this.pattern.length() - 1 - i);
+
+	} // charAt
+
+	/**
+	 * @param root  root of the tree to search
+	 * @param from  position of the first character to look at
+	 * @param limit how many matches to find at most
+	 * @return the start positions of the matches that do not overlap each other,
+	 *         in walk order
+	 */
+	List<Integer> find(Node root, int from, int limit) {
+
+		List<Integer> matches = new ArrayList<Integer>();
+		int length = this.pattern.length();
+
+		// no match can exist if a pattern character is missing from the tree
+		for (int i = 0; i < length; i++)
+			if ((root.mask & Node.maskOf(this.pattern.charAt(i))) == 0)
+				return matches;
+
+		NodeCursor cursor = new NodeCursor(root, from, this.forward);
+		char first = this.charAt(0);
+		int matched = 0;
+		int misses = 0;
+
+		while (matches.size() < limit && cursor.hasNext()) {
+
+			if (misses == MISSES_BEFORE_JUMP) {
+				misses = 0;
+				int next = this.forward ? root.indexOf(first, cursor.position())
+						: root.lastIndexOf(first, cursor.position());
+				if (next < 0)
+					break;
+				cursor.seek(root, next);
+			}
+
+			int pos = cursor.position();
+			char ch = cursor.next();
+			while (matched > 0 && ch != this.charAt(matched))
+				matched = this.fallback[matched - 1];
+			if (ch == this.charAt(matched)) {
+				matched++;
+				misses = 0;
+			} else
+				misses++;
+
+			if (matched == length) {
+				matches.add(this.forward ? pos - length + 1 : pos);
+				matched = 0;
+			}
+
+		}
+
+		return matches;
+
+	} // find
+
+} // end PatternSearch
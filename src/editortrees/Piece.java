@@ -0,0 +1,114 @@
+package editortrees;
+
+/**
+ * a run of characters held by a PieceTree
+ */
+abstract class Piece {
+
+	abstract int length();
+
+	abstract char charAt(int index);
+
+	/**
+	 * appends the characters from index from up to index to
+	 */
+	abstract void appendTo(StringBuilder builder, int from, int to);
+
+	/**
+	 * @return a piece of the characters from index from up to index to
+	 */
+	abstract Piece slice(int from, int to);
+
+	/**
+	 * characters of some text that is never changed where the piece points, like
+	 * a loaded file or an append-only buffer, so slicing is O(1)
+	 */
+	static class Slice extends Piece {
+
+		final CharSequence source;
+		final int start;
+		int length; // grows when the source grows right behind the slice
+
+		Slice(CharSequence source, int start, int length) {
+
+			this.source = source;
+			this.start = start;
+			this.length = length;
+
+		} // Slice
+
+		@Override
+		int length() {
+
+			return this.length;
+
+		} // length
+
+		@Override
+		char charAt(int index) {
+
+			return this.source.charAt(this.start + index);
+
+		} // charAt
+
+		@Override
+		void appendTo(StringBuilder builder, int from, int to) {
+
+			builder.append(this.source, this.start + from, this.start + to);
+
+		} // appendTo
+
+		@Override
+		Piece slice(int from, int to) {
+
+			return new Slice(this.source, this.start + from, to - from);
+
+		} // slice
+
+	} // end Slice
+
+	/**
+	 * characters kept in an EditTree, so they can be edited in place in
+	 * O(log(N)) time, and sliced in O(log(N)) time by copyRange
+	 */
+	static class Tree extends Piece {
+
+		final EditTree tree;
+
+		Tree(EditTree tree) {
+
+			this.tree = tree;
+
+		} // Tree
+
+		@Override
+		int length() {
+
+			return this.tree.size();
+
+		} // length
+
+		@Override
+		char charAt(int index) {
+
+			return this.tree.get(index);
+
+		} // charAt
+
+		@Override
+		void appendTo(StringBuilder builder, int from, int to) {
+
+			builder.append(this.tree.get(from, to - from));
+
+		} // appendTo
+
+		@Override
+		Piece slice(int from, int to) {
+
+			return new Tree(this.tree.copyRange(from, to - from));
+
+		} // slice
+
+	} // end Tree
+
+} // end Piece
@@ -0,0 +1,141 @@
+package editortrees;
+
+/**
+ * a text editing engine with the add, delete and get methods of EditTree, that
+ * keeps the original text as it is, appends every added character to one add
+ * buffer, and describes the text as a balanced tree of slices of the two
+ * 
+ * memory grows with the number of edits, not with the length of the text, and
+ * typing in one place keeps extending the same slice of the add buffer
+ */
+public class PieceTable implements TextBuffer {
+
+	private final StringBuilder added; // only ever appended to
+	private final PieceTree pieces;
+	private Piece.Slice last; // the slice that ends where the add buffer ends
+
+	/**
+	 * constructs an empty table in O(1) time
+	 */
+	public PieceTable() {
+
+		this("");
+
+	} // PieceTable
+
+	/**
+	 * constructs a table whose original text is text, in O(1) time
+	 * 
+	 * @param text the original text, which must not change
+	 */
+	public PieceTable(CharSequence text) {
+
+		this.added = new StringBuilder();
+		this.pieces = new PieceTree();
+		if (text.length() > 0)
+			this.pieces.insert(0, new Piece.Slice(text, 0, text.length()));
+		this.last = null;
+
+	} // PieceTable
+
+	/**
+	 * @return the number of characters in O(1) time
+	 */
+	public int size() {
+
+		return this.pieces.length();
+
+	} // size
+
+	/**
+	 * adds ch to the end, works in O(log(P)) expected time for P pieces
+	 */
+	public void add(char ch) {
+
+		this.add(ch, this.size());
+
+	} // add
+
+	/**
+	 * adds ch at pos, works in O(log(P)) expected time for P pieces
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size())
+			throw new IndexOutOfBoundsException();
+
+		this.added.append(ch);
+
+		// when the character in front of pos was the last one added, the slice
+		// holding it can take ch too
+		if (pos > 0 && this.last != null) {
+			PieceTree.Location before = this.pieces.locate(pos - 1);
+			if (before.piece == this.last && before.offset == this.last.length - 1) {
+				this.last.length++;
+				this.pieces.grown(this.last, pos - 1, 1);
+				return;
+			}
+		}
+		this.last = new Piece.Slice(this.added, this.added.length() - 1, 1);
+		this.pieces.insert(pos, this.last);
+
+	} // add
+
+	/**
+	 * deletes the character at pos, works in O(log(P)) expected time for P pieces
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		char ch = this.get(pos);
+		// cutting a slice makes new ones, so a cut last slice is no longer found
+		this.pieces.delete(pos, 1);
+		return ch;
+
+	} // delete
+
+	/**
+	 * @return the character at pos in O(log(P)) expected time
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+		return this.pieces.charAt(pos);
+
+	} // get
+
+	/**
+	 * @return the length characters from pos in O(log(P) + K + length) expected
+	 *         time for K pieces in the range
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size())
+			throw new IndexOutOfBoundsException();
+		StringBuilder builder = new StringBuilder(length);
+		this.pieces.appendTo(builder, pos, length);
+		return builder.toString();
+
+	} // get
+
+	/**
+	 * @return all the characters in O(N) time
+	 */
+	@Override
+	public String toString() {
+
+		return this.get(0, this.size());
+
+	} // toString
+
+} // end PieceTable
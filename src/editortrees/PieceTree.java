@@ -0,0 +1,234 @@
+package editortrees;
+
+import java.util.Random;
+
+/**
+ * a sequence of pieces in a treap ordered by position, where each entry knows
+ * the total length of its subtree, so finding, adding and removing characters
+ * works in O(log(P)) expected time for P pieces
+ */
+class PieceTree {
+
+	private final Random random;
+	private Entry root;
+
+	/**
+	 * a piece and the total length of the pieces in its subtree
+	 */
+	private final class Entry {
+
+		Piece piece;
+		final int priority;
+		int length;
+		Entry left;
+		Entry right;
+
+		Entry(Piece piece) {
+
+			this.piece = piece;
+			this.priority = PieceTree.this.random.nextInt();
+			this.length = piece.length();
+
+		} // Entry
+
+		void update() {
+
+			this.length = length(this.left) + this.piece.length() + length(this.right);
+
+		} // update
+
+	} // end Entry
+
+	/**
+	 * where a position falls in the pieces
+	 */
+	static final class Location {
+
+		Piece piece;
+		int offset; // of the position within the piece
+
+	} // end Location
+
+	PieceTree() {
+
+		this.random = new Random();
+		this.root = null;
+
+	} // PieceTree
+
+	private static int length(Entry entry) {
+
+		return entry == null ? 0 : entry.length;
+
+	} // length
+
+	/**
+	 * @return the number of characters in all the pieces in O(1) time
+	 */
+	int length() {
+
+		return length(this.root);
+
+	} // length
+
+	/**
+	 * @param pos position of a character
+	 * @return the piece holding it in O(log(P)) expected time
+	 */
+	Location locate(int pos) {
+
+		Entry entry = this.root;
+		while (true) {
+			int leftLength = length(entry.left);
+			if (pos < leftLength)
+				entry = entry.left;
+			else if (pos < leftLength + entry.piece.length()) {
+				Location location = new Location();
+				location.piece = entry.piece;
+				location.offset = pos - leftLength;
+				return location;
+			} else {
+				pos -= leftLength + entry.piece.length();
+				entry = entry.right;
+			}
+		}
+
+	} // locate
+
+	/**
+	 * @return the character at pos in O(log(P)) expected time, plus the time the
+	 *         piece takes
+	 */
+	char charAt(int pos) {
+
+		Location location = this.locate(pos);
+		return location.piece.charAt(location.offset);
+
+	} // charAt
+
+	/**
+	 * records that piece, which held the character at pos, has grown by delta
+	 * characters, which it has done itself, in O(log(P)) expected time
+	 */
+	void grown(Piece piece, int pos, int delta) {
+
+		// the subtrees off the path still have their old lengths
+		Entry entry = this.root;
+		while (true) {
+			entry.length += delta;
+			int leftLength = length(entry.left);
+			if (pos < leftLength)
+				entry = entry.left;
+			else if (entry.piece == piece)
+				return;
+			else {
+				pos -= leftLength + entry.piece.length();
+				entry = entry.right;
+			}
+		}
+
+	} // grown
+
+	/**
+	 * puts piece in front of the character at pos, cutting the piece that holds
+	 * it in two if need be, in O(log(P)) expected time
+	 */
+	void insert(int pos, Piece piece) {
+
+		Entry[] parts = this.split(this.root, pos);
+		this.root = this.merge(this.merge(parts[0], new Entry(piece)), parts[1]);
+
+	} // insert
+
+	/**
+	 * removes the characters from pos up to pos + length, cutting the pieces at
+	 * either end if need be, in O(log(P)) expected time plus O(1) for each piece
+	 * removed whole
+	 */
+	void delete(int pos, int length) {
+
+		Entry[] front = this.split(this.root, pos);
+		Entry[] back = this.split(front[1], length);
+		this.root = this.merge(front[0], back[1]);
+
+	} // delete
+
+	/**
+	 * appends the characters from pos up to pos + length, in O(log(P) + K) time
+	 * for K pieces in the range, plus the time the pieces take
+	 */
+	void appendTo(StringBuilder builder, int pos, int length) {
+
+		appendTo(this.root, builder, pos, pos + length);
+
+	} // appendTo
+
+	private static void appendTo(Entry entry, StringBuilder builder, int from, int to) {
+
+		if (entry == null || from >= to) return;
+		int leftLength = length(entry.left);
+		int pieceLength = entry.piece.length();
+		if (from < leftLength)
+			appendTo(entry.left, builder, from, Math.min(to, leftLength));
+		int start = Math.max(from - leftLength, 0);
+		int end = Math.min(to - leftLength, pieceLength);
+		if (start < end)
+			entry.piece.appendTo(builder, start, end);
+		if (to > leftLength + pieceLength)
+			appendTo(entry.right, builder, Math.max(from - leftLength - pieceLength, 0), to - leftLength - pieceLength);
+
+	} // appendTo
+
+	/**
+	 * splits a treap into its first pos characters and the rest
+	 * 
+	 * @return the two treaps, either of which may be null
+	 */
+	private Entry[] split(Entry entry, int pos) {
+
+		if (entry == null) return new Entry[2];
+
+		int leftLength = length(entry.left);
+		int pieceLength = entry.piece.length();
+		Entry[] parts;
+		if (pos <= leftLength) {
+			parts = this.split(entry.left, pos);
+			entry.left = parts[1];
+			parts[1] = entry;
+		} else if (pos >= leftLength + pieceLength) {
+			parts = this.split(entry.right, pos - leftLength - pieceLength);
+			entry.right = parts[0];
+			parts[0] = entry;
+		} else {
+			// the cut falls inside this piece
+			int cut = pos - leftLength;
+			Entry rest = new Entry(entry.piece.slice(cut, pieceLength));
+			parts = new Entry[] { entry, this.merge(rest, entry.right) };
+			entry.piece = entry.piece.slice(0, cut);
+			entry.right = null;
+		}
+		entry.update();
+		return parts;
+
+	} // split
+
+	/**
+	 * @return the treap with all pieces of first followed by all of second
+	 */
+	private Entry merge(Entry first, Entry second) {
+
+		if (first == null) return second;
+		if (second == null) return first;
+
+		if (first.priority > second.priority) {
+			first.right = this.merge(first.right, second);
+			first.update();
+			return first;
+		}
+		second.left = this.merge(first, second.left);
+		second.update();
+		return second;
+
+	} // merge
+
+} // end PieceTree
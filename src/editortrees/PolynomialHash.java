@@ -0,0 +1,106 @@
+package editortrees;
+
+/**
+ * polynomial hash of a run of characters, modulo the prime 2^61 - 1
+ * 
+ * the hash of c0 c1 ... cn is (c0 + 1) * B^n + (c1 + 1) * B^(n-1) + ... + (cn + 1)
+ * for a fixed base B, so two runs join by multiplying the left hash by B to the
+ * length of the right run. each summary carries that power along with its hash,
+ * and the hash of the run reversed, so a tree can reverse a range lazily.
+ */
+public class PolynomialHash implements Aggregate<PolynomialHash.Value> {
+
+	/**
+	 * the hash every EditTree keeps, shared so hashes of different trees compare
+	 */
+	public static final PolynomialHash INSTANCE = new PolynomialHash();
+
+	private static final long MODULUS = (1L << 61) - 1;
+	private static final long BASE = 0x1F3D5B79A2C4E6L % MODULUS;
+
+	private static final Value EMPTY = new Value(0, 0, 1);
+
+	private PolynomialHash() {
+
+	} // PolynomialHash
+
+	/**
+	 * the hash of a run of characters together with the hash of the run
+	 * reversed and BASE to the run's length
+	 */
+	public static final class Value {
+
+		public final long hash;
+		final long reversedHash;
+		final long power;
+
+		Value(long hash, long reversedHash, long power) {
+
+			this.hash = hash;
+			this.reversedHash = reversedHash;
+			this.power = power;
+
+		} // Value
+
+	} // end Value
+
+	@Override
+	public Value identity() {
+
+		return EMPTY;
+
+	} // identity
+
+	@Override
+	public Value of(char ch) {
+
+		return new Value(ch + 1, ch + 1, BASE);
+
+	} // of
+
+	@Override
+	public Value combine(Value left, Value right) {
+
+		if (left == EMPTY) return right;
+		if (right == EMPTY) return left;
+
+		long hash = multiply(left.hash, right.power) + right.hash;
+		if (hash >= MODULUS) hash -= MODULUS;
+		long reversedHash = multiply(right.reversedHash, left.power) + left.reversedHash;
+		if (reversedHash >= MODULUS) reversedHash -= MODULUS;
+		return new Value(hash, reversedHash, multiply(left.power, right.power));
+
+	} // combine
+
+	@Override
+	public boolean reversible() {
+
+		return true;
+
+	} // reversible
+
+	@Override
+	public Value reversed(Value summary) {
+
+		if (summary == EMPTY) return EMPTY;
+		return new Value(summary.reversedHash, summary.hash, summary.power);
+
+	} // reversed
+
+	/**
+	 * @return a * b modulo 2^61 - 1 for a and b below the modulus
+	 */
+	private static long multiply(long a, long b) {
+
+		long high = Math.multiplyHigh(a, b);
+		long low = a * b;
+
+		// a * b = high * 2^64 + low, and 2^61 is 1 modulo the modulus
+		long result = (low & MODULUS) + (low >>> 61) + (high << 3);
+		result = (result & MODULUS) + (result >>> 61);
+		if (result >= MODULUS) result -= MODULUS;
+		return result;
+
+	} // multiply
+
+} // end PolynomialHash
@@ -0,0 +1,54 @@
+package editortrees;
+
+/**
+ * a range of positions in an EditTree, from start up to but not including end
+ */
+public final class Range {
+
+	public final int start;
+	public final int end;
+
+	public Range(int start, int end) {
+
+		if (start < 0 || end < start)
+			throw new IllegalArgumentException("bad range [" + start + ", " + end + ")");
+
+		this.start = start;
+		this.end = end;
+
+	} // Range
+
+	/**
+	 * @return the number of positions in the range
+	 */
+	public int length() {
+
+		return this.end - this.start;
+
+	} // length
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (!(other instanceof Range))
+			return false;
+		Range range = (Range) other;
+		return this.start == range.start && this.end == range.end;
+
+	} // equals
+
+	@Override
+	public int hashCode() {
+
+		return 31 * this.start + this.end;
+
+	} // hashCode
+
+	@Override
+	public String toString() {
+
+		return "[" + this.start + ", " + this.end + ")";
+
+	} // toString
+
+} // end Range
@@ -0,0 +1,313 @@
+package editortrees;
+
+import java.util.ArrayDeque;
+
+/**
+ * a self-adjusting binary tree with the editing methods of EditTree, in which
+ * every access splays the node it reaches to the root, so positions used
+ * recently are near the top and the next access near them is cheap
+ * 
+ * each node keeps the size of its subtree, which plays the part of rank.
+ * every operation works in O(log(N)) amortized time, and in less when accesses
+ * stay near one another, though a single one may take O(N) time
+ */
+public class SplayEditTree implements TextBuffer {
+
+	private SplayNode root;
+
+	/**
+	 * a character, its subtrees and its parent
+	 */
+	private static final class SplayNode {
+
+		char data;
+		SplayNode left, right, parent;
+		int size; // number of nodes within this node's subtree
+
+		SplayNode(char data) {
+
+			this.data = data;
+			this.size = 1;
+
+		} // SplayNode
+
+		void update() {
+
+			this.size = size(this.left) + size(this.right) + 1;
+
+		} // update
+
+	} // end SplayNode
+
+	/**
+	 * constructs an empty tree in O(1) time
+	 */
+	public SplayEditTree() {
+
+		this.root = null;
+
+	} // SplayEditTree
+
+	/**
+	 * constructs a balanced tree that holds s, in O(N) time
+	 */
+	public SplayEditTree(String s) {
+
+		this.root = build(s.toCharArray(), 0, s.length());
+
+	} // SplayEditTree
+
+	/**
+	 * @return the root of a balanced tree of chars from from to to, whose middle
+	 *         character is the root, or null if there are none
+	 */
+	private static SplayNode build(char[] chars, int from, int to) {
+
+		if (from == to)
+			return null;
+
+		int mid = (from + to) >>> 1;
+		SplayNode node = new SplayNode(chars[mid]);
+		node.left = build(chars, from, mid);
+		node.right = build(chars, mid + 1, to);
+		setParent(node.left, node);
+		setParent(node.right, node);
+		node.update();
+		return node;
+
+	} // build
+
+	private static int size(SplayNode node) {
+
+		return node == null ? 0 : node.size;
+
+	} // size
+
+	public int size() {
+
+		return size(this.root);
+
+	} // size
+
+	/**
+	 * adds ch to the end, in O(1) time
+	 */
+	public void add(char ch) {
+
+		SplayNode node = new SplayNode(ch);
+		node.left = this.root;
+		setParent(this.root, node);
+		node.update();
+		this.root = node;
+
+	} // add
+
+	/**
+	 * adds ch at pos as the new root, in front of the old node at pos
+	 * works in O(log(N)) amortized time
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size())
+			throw new IndexOutOfBoundsException();
+		if (pos == this.size()) {
+			this.add(ch);
+			return;
+		}
+
+		SplayNode next = this.splay(pos);
+		SplayNode node = new SplayNode(ch);
+		node.left = next.left;
+		setParent(node.left, node);
+		next.left = null;
+		next.update();
+		node.right = next;
+		next.parent = node;
+		node.update();
+		this.root = node;
+
+	} // add
+
+	/**
+	 * deletes the character at pos, works in O(log(N)) amortized time
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+
+		SplayNode node = this.splay(pos);
+		SplayNode left = node.left;
+		SplayNode right = node.right;
+		setParent(left, null);
+		setParent(right, null);
+		if (left == null) {
+			this.root = right;
+		} else {
+			// the last node of the left part has no right child once it is on top
+			this.root = left;
+			SplayNode last = this.splay(pos - 1);
+			last.right = right;
+			setParent(right, last);
+			last.update();
+		}
+		return node.data;
+
+	} // delete
+
+	/**
+	 * @return the character at pos in O(log(N)) amortized time
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos >= this.size())
+			throw new IndexOutOfBoundsException();
+		return this.splay(pos).data;
+
+	} // get
+
+	/**
+	 * @return the length characters from pos, in O(length + log(N)) amortized
+	 *         time
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || length < 0 || pos + length > this.size())
+			throw new IndexOutOfBoundsException();
+		StringBuilder builder = new StringBuilder(length);
+		if (length == 0)
+			return "";
+
+		// with the first node on top, the rest of the range is its right subtree
+		SplayNode first = this.splay(pos);
+		builder.append(first.data);
+		ArrayDeque<SplayNode> stack = new ArrayDeque<SplayNode>();
+		for (SplayNode node = first.right; node != null; node = node.left)
+			stack.push(node);
+		while (builder.length() < length) {
+			SplayNode node = stack.pop();
+			builder.append(node.data);
+			for (SplayNode child = node.right; child != null; child = child.left)
+				stack.push(child);
+		}
+		return builder.toString();
+
+	} // get
+
+	/**
+	 * @return height of the tree in O(N) time, walking it level by level since
+	 *         it may be a long chain
+	 */
+	public int slowHeight() {
+
+		int height = -1;
+		ArrayDeque<SplayNode> level = new ArrayDeque<SplayNode>();
+		if (this.root != null)
+			level.add(this.root);
+		while (!level.isEmpty()) {
+			height++;
+			for (int i = level.size(); i > 0; i--) {
+				SplayNode node = level.poll();
+				if (node.left != null)
+					level.add(node.left);
+				if (node.right != null)
+					level.add(node.right);
+			}
+		}
+		return height;
+
+	} // slowHeight
+
+	/**
+	 * @return all the characters in O(N) time
+	 */
+	@Override
+	public String toString() {
+
+		return this.get(0, this.size());
+
+	} // toString
+
+	private static void setParent(SplayNode child, SplayNode parent) {
+
+		if (child != null) child.parent = parent;
+
+	} // setParent
+
+	/**
+	 * finds the node at pos and splays it to the root
+	 * 
+	 * @return that node
+	 */
+	private SplayNode splay(int pos) {
+
+		SplayNode node = this.root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (pos < leftSize)
+				node = node.left;
+			else if (pos > leftSize) {
+				pos -= leftSize + 1;
+				node = node.right;
+			} else
+				break;
+		}
+
+		while (node.parent != null) {
+			SplayNode parent = node.parent;
+			SplayNode grandparent = parent.parent;
+			if (grandparent == null)
+				rotateUp(node); // zig
+			else if ((grandparent.left == parent) == (parent.left == node)) {
+				rotateUp(parent); // zig-zig
+				rotateUp(node);
+			} else {
+				rotateUp(node); // zig-zag
+				rotateUp(node);
+			}
+		}
+		this.root = node;
+		return node;
+
+	} // splay
+
+	/**
+	 * rotates node above its parent in O(1) time
+	 */
+	private static void rotateUp(SplayNode node) {
+
+		SplayNode parent = node.parent;
+		SplayNode grandparent = parent.parent;
+		if (parent.left == node) {
+			parent.left = node.right;
+			setParent(parent.left, parent);
+			node.right = parent;
+		} else {
+			parent.right = node.left;
+			setParent(parent.right, parent);
+			node.left = parent;
+		}
+		parent.parent = node;
+		node.parent = grandparent;
+		if (grandparent != null) {
+			if (grandparent.left == parent)
+				grandparent.left = node;
+			else
+				grandparent.right = node;
+		}
+		parent.update();
+		node.update();
+
+	} // rotateUp
+
+} // end SplayEditTree
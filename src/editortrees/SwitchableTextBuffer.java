@@ -0,0 +1,87 @@
+package editortrees;
+
+import editortrees.TextBuffers.Engine;
+
+/**
+ * a TextBuffer that can move its text to another engine while in use, for
+ * texts whose use changes
+ */
+public class SwitchableTextBuffer implements TextBuffer {
+
+	private TextBuffer buffer;
+	private Engine engine;
+
+	/**
+	 * constructs a buffer of engine that holds text, in O(N) time
+	 */
+	public SwitchableTextBuffer(String text, Engine engine) {
+
+		this.buffer = engine.create(text);
+		this.engine = engine;
+
+	} // SwitchableTextBuffer
+
+	/**
+	 * @return the engine that keeps the text now
+	 */
+	public Engine engine() {
+
+		return this.engine;
+
+	} // engine
+
+	/**
+	 * moves the text to engine, works in O(N) time unless it is there already
+	 */
+	public void switchTo(Engine engine) {
+
+		if (engine == this.engine) return;
+		this.buffer = engine.create(this.buffer.toString());
+		this.engine = engine;
+
+	} // switchTo
+
+	public int size() {
+
+		return this.buffer.size();
+
+	} // size
+
+	public void add(char ch) {
+
+		this.buffer.add(ch);
+
+	} // add
+
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+
+		this.buffer.add(ch, pos);
+
+	} // add
+
+	public char delete(int pos) throws IndexOutOfBoundsException {
+
+		return this.buffer.delete(pos);
+
+	} // delete
+
+	public char get(int pos) throws IndexOutOfBoundsException {
+
+		return this.buffer.get(pos);
+
+	} // get
+
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+
+		return this.buffer.get(pos, length);
+
+	} // get
+
+	@Override
+	public String toString() {
+
+		return this.buffer.toString();
+
+	} // toString
+
+} // end SwitchableTextBuffer
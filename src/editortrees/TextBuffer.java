@@ -0,0 +1,57 @@
+package editortrees;
+
+/**
+ * editable text with the editing methods of EditTree, so callers can work with
+ * any of the engines that keep text
+ * 
+ * @see TextBuffers for choosing an engine
+ */
+public interface TextBuffer {
+
+	/**
+	 * @return the number of characters
+	 */
+	int size();
+
+	/**
+	 * adds ch to the end
+	 */
+	void add(char ch);
+
+	/**
+	 * adds ch so that it ends up at pos
+	 * 
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the size
+	 */
+	void add(char ch, int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * deletes the character at pos
+	 * 
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	char delete(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @return the character at pos
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size
+	 */
+	char get(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @return the length characters from pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes
+	 */
+	String get(int pos, int length) throws IndexOutOfBoundsException;
+
+	/**
+	 * @return all the characters
+	 */
+	@Override
+	String toString();
+
+} // end TextBuffer
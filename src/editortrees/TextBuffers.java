@@ -0,0 +1,88 @@
+package editortrees;
+
+/**
+ * picks the engine for a text from what is known about how it will be used
+ */
+public class TextBuffers {
+
+	/**
+	 * the engines a TextBuffer can be made with from a string
+	 */
+	public enum Engine {
+
+		/** a node per character, O(log(N)) for everything */
+		TREE,
+		/** slices of the original text and an add buffer, memory grows with edits */
+		PIECE_TABLE,
+		/** a tree with a gap buffer in front for bursts of edits in one place */
+		BUFFERED,
+		/** an array while small and a tree once large */
+		ADAPTIVE,
+		/** a splay tree, cheap when accesses stay near the recent ones */
+		SPLAY;
+
+		/**
+		 * @return a buffer of this engine that holds text, in O(N) time
+		 */
+		public TextBuffer create(String text) {
+
+			switch (this) {
+			case TREE:
+				return new EditTree(text);
+			case PIECE_TABLE:
+				return new PieceTable(text);
+			case BUFFERED:
+				return new BufferedEditTree(new EditTree(text), 256);
+			case ADAPTIVE:
+				return new AdaptiveEditTree(text);
+			case SPLAY:
+				return new SplayEditTree(text);
+			default:
+				throw new IllegalStateException();
+			}
+
+		} // create
+
+	} // end Engine
+
+	private TextBuffers() {
+
+	} // TextBuffers
+
+	/**
+	 * @param expectedSize  the number of characters the text is expected to hold
+	 * @param editLocality  the share of edits made next to the edit before, from
+	 *                      0 to 1
+	 * @param readsPerWrite the number of get calls expected for each add or
+	 *                      delete
+	 * @return the engine for that use
+	 */
+	public static Engine choose(int expectedSize, double editLocality, double readsPerWrite) {
+
+		// small texts are fastest and smallest as arrays
+		if (expectedSize <= AdaptiveEditTree.DEFAULT_THRESHOLD)
+			return Engine.ADAPTIVE;
+		// large texts that are mostly read keep few pieces, so reads stay cheap
+		// and memory stays close to the original text
+		if (readsPerWrite >= 10)
+			return Engine.PIECE_TABLE;
+		// runs of edits in one place are absorbed by the gap buffer
+		if (editLocality >= 0.5)
+			return Engine.BUFFERED;
+		return Engine.TREE;
+
+	} // choose
+
+	/**
+	 * @return a buffer that holds text, of the engine chosen for that use, which
+	 *         can be moved to another engine while in use
+	 * @see #choose(int, double, double)
+	 */
+	public static SwitchableTextBuffer create(String text, int expectedSize, double editLocality,
+			double readsPerWrite) {
+
+		return new SwitchableTextBuffer(text, choose(expectedSize, editLocality, readsPerWrite));
+
+	} // create
+
+} // end TextBuffers
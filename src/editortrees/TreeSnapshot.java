@@ -0,0 +1,116 @@
+package editortrees;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * the binary snapshot of an EditTree: a header of the magic number, the format
+ * version and the number of characters, then the characters in order as
+ * big-endian UTF-16 code units, then the CRC-32 of those characters' bytes
+ *
+ * the shape of the tree is not written, since building a tree from its
+ * characters always gives the same shape
+ */
+class TreeSnapshot {
+
+	static final int MAGIC = 0x45445452; // "EDTR"
+	static final int VERSION = 1;
+
+	private static final int HEADER = 12;
+	private static final int TRAILER = 8;
+	private static final int CHUNK = 1 << 16; // bytes moved per channel call
+
+	/**
+	 * writes the characters of the tree rooted at root, works in O(N) time
+	 */
+	static void write(Node root, int size, WritableByteChannel channel) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(size);
+		writeAll(buffer, channel);
+
+		CRC32 crc = new CRC32();
+		NodeCursor cursor = new NodeCursor(root, 0, true);
+		while (cursor.hasNext()) {
+			buffer.putChar(cursor.next());
+			if (!buffer.hasRemaining()) {
+				crc.update(buffer.array(), 0, buffer.position());
+				writeAll(buffer, channel);
+			}
+		}
+		crc.update(buffer.array(), 0, buffer.position());
+
+		if (buffer.remaining() < TRAILER)
+			writeAll(buffer, channel);
+		buffer.putLong(crc.getValue());
+		writeAll(buffer, channel);
+
+	} // write
+
+	private static void writeAll(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+
+	} // writeAll
+
+	/**
+	 * reads the characters of a snapshot in bulk, works in O(N) time
+	 *
+	 * @throws IOException if the channel fails or does not hold a whole snapshot
+	 *                     of this version with the right checksum
+	 */
+	static char[] read(ReadableByteChannel channel) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+		buffer.limit(HEADER);
+		readAll(buffer, channel);
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("not an EditTree snapshot");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+		int size = buffer.getInt();
+		if (size < 0)
+			throw new IOException("corrupt snapshot size " + size);
+
+		char[] chars = new char[size];
+		CRC32 crc = new CRC32();
+		for (int done = 0; done < size;) {
+			int count = Math.min(size - done, CHUNK / 2);
+			buffer.clear();
+			buffer.limit(2 * count);
+			readAll(buffer, channel);
+			crc.update(buffer.array(), 0, 2 * count);
+			buffer.asCharBuffer().get(chars, done, count);
+			done += count;
+		}
+
+		buffer.clear();
+		buffer.limit(TRAILER);
+		readAll(buffer, channel);
+		if (buffer.getLong() != crc.getValue())
+			throw new IOException("snapshot checksum does not match");
+		return chars;
+
+	} // read
+
+	/**
+	 * fills buffer up to its limit and flips it for reading
+	 */
+	private static void readAll(ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new EOFException("snapshot ends early");
+		buffer.flip();
+
+	} // readAll
+
+} // end TreeSnapshot
@@ -0,0 +1,94 @@
+package editortrees;
+
+/**
+ * counts the bytes of the UTF-8 encoding of a run of characters, matching
+ * String.getBytes(StandardCharsets.UTF_8): a surrogate pair takes four bytes
+ * and an unpaired surrogate is replaced by a one byte '?'
+ * 
+ * like CodePoints, each summary remembers which surrogates the run starts and
+ * ends with, since a pair can be split between two runs, and also counts the
+ * run reversed, so a tree can reverse a range lazily
+ */
+class Utf8Length implements Aggregate<Utf8Length.Value> {
+
+	static final Utf8Length INSTANCE = new Utf8Length();
+
+	private static final Value EMPTY = new Value(0, 0, false, false, false, false);
+	private static final Value[] PLAIN = { null, new Value(1, 1, false, false, false, false),
+			new Value(2, 2, false, false, false, false), new Value(3, 3, false, false, false, false) };
+	private static final Value HIGH = new Value(1, 1, false, true, false, true);
+	private static final Value LOW = new Value(1, 1, true, false, true, false);
+
+	private Utf8Length() {
+
+	} // Utf8Length
+
+	static final class Value {
+
+		final int bytes;
+		final int reversedBytes; // the bytes of the run reversed
+		final boolean startsLow; // the first character is a low surrogate
+		final boolean startsHigh; // the first character is a high surrogate
+		final boolean endsLow; // the last character is a low surrogate
+		final boolean endsHigh; // the last character is a high surrogate
+
+		Value(int bytes, int reversedBytes, boolean startsLow, boolean startsHigh, boolean endsLow, boolean endsHigh) {
+
+			this.bytes = bytes;
+			this.reversedBytes = reversedBytes;
+			this.startsLow = startsLow;
+			this.startsHigh = startsHigh;
+			this.endsLow = endsLow;
+			this.endsHigh = endsHigh;
+
+		} // Value
+
+	} // end Value
+
+	@Override
+	public Value identity() {
+
+		return EMPTY;
+
+	} // identity
+
+	@Override
+	public Value of(char ch) {
+
+		if (Character.isHighSurrogate(ch)) return HIGH;
+		if (Character.isLowSurrogate(ch)) return LOW;
+		if (ch < 0x80) return PLAIN[1];
+		if (ch < 0x800) return PLAIN[2];
+		return PLAIN[3];
+
+	} // of
+
+	@Override
+	public Value combine(Value left, Value right) {
+
+		if (left.bytes == 0) return right;
+		if (right.bytes == 0) return left;
+
+		// two one byte halves that turn out to be a pair take four bytes
+		int bytes = left.bytes + right.bytes + (left.endsHigh && right.startsLow ? 2 : 0);
+		int reversedBytes = left.reversedBytes + right.reversedBytes + (right.startsHigh && left.endsLow ? 2 : 0);
+		return new Value(bytes, reversedBytes, left.startsLow, left.startsHigh, right.endsLow, right.endsHigh);
+
+	} // combine
+
+	@Override
+	public boolean reversible() {
+
+		return true;
+
+	} // reversible
+
+	@Override
+	public Value reversed(Value summary) {
+
+		return new Value(summary.reversedBytes, summary.bytes, summary.endsLow, summary.endsHigh, summary.startsLow,
+				summary.startsHigh);
+
+	} // reversed
+
+} // end Utf8Length
@@ -0,0 +1,96 @@
+package editortrees;
+
+/**
+ * the on-screen layout of an EditTree for one tab size and wrap width, kept up
+ * to date by the tree's nodes as the tree changes
+ * see VisualWidth for how tabs, wide characters and wrapping are counted
+ */
+public class VisualLayout {
+
+	private final EditTree tree;
+	private final VisualWidth width;
+
+	/**
+	 * a visual row and column on screen, both zero-based
+	 */
+	public static final class Position {
+
+		public final int row;
+		public final int column;
+
+		Position(int row, int column) {
+
+			this.row = row;
+			this.column = column;
+
+		} // Position
+
+		@Override
+		public String toString() {
+
+			return "(" + this.row + ", " + this.column + ")";
+
+		} // toString
+
+	} // end Position
+
+	/**
+	 * makes the tree keep the layout, works in O(N) time
+	 */
+	VisualLayout(EditTree tree, int tabSize, int wrapWidth) {
+
+		this.tree = tree;
+		this.width = new VisualWidth(tabSize, wrapWidth);
+		this.tree.addAggregate(this.width);
+
+	} // VisualLayout
+
+	/**
+	 * @return the number of visual rows of the whole tree in O(1) time
+	 */
+	public int rowCount() {
+
+		return this.width.rowOf(this.tree.fold(this.width, 0, this.tree.size())) + 1;
+
+	} // rowCount
+
+	/**
+	 * @param pos position in the tree, from 0 to the size of the tree, inclusive
+	 * @return where the character at pos is drawn in O(log(N)) time
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public Position positionOf(int pos) throws IndexOutOfBoundsException {
+
+		VisualWidth.Value prefix = this.tree.fold(this.width, 0, pos);
+		return new Position(this.width.rowOf(prefix), this.width.columnOf(prefix));
+
+	} // positionOf
+
+	/**
+	 * @param row a visual row, less than rowCount()
+	 * @return the position of the first character drawn on that row in O(log(N))
+	 *         time
+	 * @throws IndexOutOfBoundsException if row is negative or too large
+	 */
+	public int offsetOfRow(int row) throws IndexOutOfBoundsException {
+
+		if (row < 0 || row >= this.rowCount())
+			throw new IndexOutOfBoundsException();
+		if (row == 0)
+			return 0;
+
+		// the row starts right after the first prefix that reaches it
+		return this.tree.search(this.width, prefix -> this.width.rowOf(prefix) >= row) + 1;
+
+	} // offsetOfRow
+
+	/**
+	 * stops the tree from keeping this layout, works in O(N) time
+	 */
+	public void close() {
+
+		this.tree.removeAggregate(this.width);
+
+	} // close
+
+} // end VisualLayout
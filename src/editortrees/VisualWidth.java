@@ -0,0 +1,201 @@
+package editortrees;
+
+/**
+ * summarizes how wide a run of characters is on screen, for a tab size and a
+ * wrap width
+ * 
+ * a tab moves to the next multiple of the tab size, so the width of a run
+ * depends on the column it starts at. up to the first tab, a run just adds its
+ * width; after the first tab it ends at a fixed distance past a tab stop. so the
+ * part of the run before its first newline is kept as that pair of widths, and
+ * the parts after the first newline, which always start at column 0, are kept
+ * as plain numbers.
+ * 
+ * a line of width w takes w / wrapWidth + 1 visual rows, so a cursor at the end
+ * of a full row has a row of its own. wide characters are counted as if they
+ * could be split at the edge of a row.
+ */
+class VisualWidth implements Aggregate<VisualWidth.Value> {
+
+	private final int tabSize;
+	private final int wrapWidth; // 0 or less to never wrap
+
+	private final Value empty;
+	private final Value newline;
+	private final Value tab;
+	private final Value[] plain; // plain[w] is a character of width w
+
+	VisualWidth(int tabSize, int wrapWidth) {
+
+		if (tabSize < 1)
+			throw new IllegalArgumentException("tab size must be positive");
+
+		this.tabSize = tabSize;
+		this.wrapWidth = wrapWidth;
+		this.empty = new Value(0, false, 0, false, 0, 0);
+		this.newline = new Value(0, false, 0, true, 0, 0);
+		this.tab = new Value(0, true, 0, false, 0, 0);
+		this.plain = new Value[3];
+		for (int w = 0; w < this.plain.length; w++)
+			this.plain[w] = new Value(w, false, 0, false, 0, 0);
+
+	} // VisualWidth
+
+	static final class Value {
+
+		// the part before the first newline, or all of it without one
+		final int before; // width up to the first tab
+		final boolean tab; // whether that part holds a tab
+		final int after; // width after the first tab, counted from a tab stop
+
+		final boolean newline; // whether the run holds a newline
+		final int rows; // visual rows of the lines ended by the second newline on
+		final int last; // width after the last newline
+
+		Value(int before, boolean tab, int after, boolean newline, int rows, int last) {
+
+			this.before = before;
+			this.tab = tab;
+			this.after = after;
+			this.newline = newline;
+			this.rows = rows;
+			this.last = last;
+
+		} // Value
+
+	} // end Value
+
+	/**
+	 * @return the number of columns ch takes on screen, tabs and newlines aside
+	 */
+	static int widthOf(char ch) {
+
+		if (ch < 0x20 || ch == 0x7f || (ch >= 0x0300 && ch <= 0x036f) || Character.isLowSurrogate(ch))
+			return 0; // control characters, combining marks and second halves
+		if (Character.isHighSurrogate(ch) || (ch >= 0x1100 && ch <= 0x115f) || (ch >= 0x2e80 && ch <= 0xa4cf)
+				|| (ch >= 0xac00 && ch <= 0xd7a3) || (ch >= 0xf900 && ch <= 0xfaff)
+				|| (ch >= 0xfe30 && ch <= 0xfe4f) || (ch >= 0xff00 && ch <= 0xff60)
+				|| (ch >= 0xffe0 && ch <= 0xffe6))
+			return 2; // east asian wide and fullwidth forms, and most emoji
+		return 1;
+
+	} // widthOf
+
+	@Override
+	public Value identity() {
+
+		return this.empty;
+
+	} // identity
+
+	@Override
+	public Value of(char ch) {
+
+		if (ch == '\n') return this.newline;
+		if (ch == '\t') return this.tab;
+		return this.plain[widthOf(ch)];
+
+	} // of
+
+	@Override
+	public Value combine(Value left, Value right) {
+
+		if (left == this.empty) return right;
+		if (right == this.empty) return left;
+
+		if (!left.newline) {
+			// the right run's first part continues the left run's only line
+			Value first = this.follow(left, right.before, right.tab, right.after);
+			return new Value(first.before, first.tab, first.after, right.newline, right.rows, right.last);
+		}
+
+		if (!right.newline)
+			return new Value(left.before, left.tab, left.after, true, left.rows, this.column(right, left.last));
+
+		// the left run's last line is ended by the right run's first newline
+		int rows = left.rows + this.rowsOf(this.column(right, left.last)) + right.rows;
+		return new Value(left.before, left.tab, left.after, true, rows, right.last);
+
+	} // combine
+
+	/**
+	 * @return the first part of left followed by a part with the given widths
+	 */
+	private Value follow(Value left, int before, boolean tab, int after) {
+
+		if (!left.tab)
+			return new Value(left.before + before, tab, after, false, 0, 0);
+		if (!tab)
+			return new Value(left.before, true, left.after + before, false, 0, 0);
+		return new Value(left.before, true, this.nextStop(left.after + before) + after, false, 0, 0);
+
+	} // follow
+
+	/**
+	 * @return the column the first part of the run ends at when it starts at start
+	 */
+	int column(Value value, int start) {
+
+		if (!value.tab)
+			return start + value.before;
+		return this.nextStop(start + value.before) + value.after;
+
+	} // column
+
+	private int nextStop(int column) {
+
+		return (column / this.tabSize + 1) * this.tabSize;
+
+	} // nextStop
+
+	/**
+	 * @return how many visual rows a line of the given width takes
+	 */
+	int rowsOf(int width) {
+
+		return this.wrapWidth > 0 ? width / this.wrapWidth + 1 : 1;
+
+	} // rowsOf
+
+	/**
+	 * @return the visual row of the end of a run starting the text
+	 */
+	int rowOf(Value value) {
+
+		if (!value.newline)
+			return this.rowsOf(this.column(value, 0)) - 1;
+		return this.rowsOf(this.column(value, 0)) + value.rows + this.rowsOf(value.last) - 1;
+
+	} // rowOf
+
+	/**
+	 * @return the visual column of the end of a run starting the text
+	 */
+	int columnOf(Value value) {
+
+		int width = value.newline ? value.last : this.column(value, 0);
+		return this.wrapWidth > 0 ? width % this.wrapWidth : width;
+
+	} // columnOf
+
+	/**
+	 * widths for the same tab size and wrap width mix, whichever made them
+	 */
+	@Override
+	public boolean equals(Object other) {
+
+		if (!(other instanceof VisualWidth))
+			return false;
+		VisualWidth width = (VisualWidth) other;
+		return this.tabSize == width.tabSize && this.wrapWidth == width.wrapWidth;
+
+	} // equals
+
+	@Override
+	public int hashCode() {
+
+		return 31 * this.tabSize + this.wrapWidth;
+
+	} // hashCode
+
+} // end VisualWidth